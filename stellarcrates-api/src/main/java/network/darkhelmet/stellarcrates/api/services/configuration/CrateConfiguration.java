@@ -32,6 +32,12 @@ import org.spongepowered.configurate.objectmapping.meta.Comment;
 
 @ConfigSerializable
 public class CrateConfiguration {
+    @Comment("""
+            The animation shown when a single key is used. `NONE`, `ROULETTE` or `SPIN`.
+            Rewards are decided before the animation starts, it's only for show.
+            """)
+    private AnimationType animation = AnimationType.NONE;
+
     @Comment("The crate item used to place this crate.")
     private CrateItemConfiguration crateItem;
 
@@ -53,12 +59,37 @@ public class CrateConfiguration {
     @Comment("Sounds to play when an award is given. Set to null for no sound.")
     private List<SoundConfiguration> onRewardSounds = new ArrayList<>();
 
+    @Comment("""
+            Ticks between particle emissions for this crate. Stretched automatically
+            when the server is under load.
+            """)
+    private int particleInterval = 5;
+
     @Comment("Particles play around crates.")
     private List<ParticleConfiguration> particles = new ArrayList<>();
 
+    @Comment("""
+            Crates with a higher priority have their reward commands run first
+            when the command queue is backed up, and their particles shown first
+            to players over their particle budget.
+            """)
+    private int priority = 0;
+
     @Comment("A list of rewards in this crate.")
     private List<RewardConfiguration> rewards = new ArrayList<>();
 
+    @Comment("""
+            How rewards are drawn. `ALIAS` is fastest when weights never change at runtime.
+            Use `FENWICK` if other plugins frequently adjust reward weights (pity systems, limited stock, etc).
+            """)
+    private RewardSamplerMode rewardSampler = RewardSamplerMode.ALIAS;
+
+    @Comment("""
+            Draw rewards using a cryptographically strong random generator.
+            Slower, but recommended for crates where fairness is sensitive.
+            """)
+    private boolean secureRandom = false;
+
     @Comment("Title shown in the UI and any holograms.")
     private String title;
 
@@ -83,6 +114,15 @@ public class CrateConfiguration {
         this.key = new KeyConfiguration(defaultKey);
     }
 
+    /**
+     * Get the animation type.
+     *
+     * @return The animation type
+     */
+    public AnimationType animation() {
+        return animation;
+    }
+
     /**
      * Set the crate item configuration.
      *
@@ -171,6 +211,15 @@ public class CrateConfiguration {
         return onRewardSounds;
     }
 
+    /**
+     * Get the ticks between particle emissions.
+     *
+     * @return The particle interval
+     */
+    public int particleInterval() {
+        return particleInterval;
+    }
+
     /**
      * Get the particle configurations.
      *
@@ -180,6 +229,15 @@ public class CrateConfiguration {
         return particles;
     }
 
+    /**
+     * Get the priority.
+     *
+     * @return The priority
+     */
+    public int priority() {
+        return priority;
+    }
+
     /**
      * Get all rewards.
      *
@@ -189,6 +247,24 @@ public class CrateConfiguration {
         return rewards;
     }
 
+    /**
+     * Get the reward sampler mode.
+     *
+     * @return The reward sampler mode
+     */
+    public RewardSamplerMode rewardSampler() {
+        return rewardSampler;
+    }
+
+    /**
+     * Whether rewards are drawn with a secure random generator.
+     *
+     * @return True if secure random is used
+     */
+    public boolean secureRandom() {
+        return secureRandom;
+    }
+
     /**
      * Get the title.
      *
@@ -22,6 +22,7 @@ package network.darkhelmet.stellarcrates.api.services.configuration;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import org.bukkit.util.Vector;
 import org.spongepowered.configurate.objectmapping.ConfigSerializable;
@@ -71,4 +72,23 @@ public class HologramConfiguration {
     public Vector positionOffset() {
         return positionOffset;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        HologramConfiguration that = (HologramConfiguration) o;
+
+        return Objects.equals(lines, that.lines) && Objects.equals(positionOffset, that.positionOffset);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lines, positionOffset);
+    }
 }
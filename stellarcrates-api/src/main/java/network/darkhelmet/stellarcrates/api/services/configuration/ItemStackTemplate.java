@@ -0,0 +1,96 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.api.services.configuration;
+
+import de.tr7zw.nbtapi.NBTContainer;
+import de.tr7zw.nbtapi.NBTItem;
+
+import java.lang.ref.SoftReference;
+
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * A lazily materialized item stack parsed from an NBT string.
+ *
+ * <p>The parsed item is never handed out, callers always receive a clone. The template is
+ * rebuilt whenever the NBT string it was parsed from changes. Items with very large NBT
+ * (shulker boxes full of items, written books, etc.) are only softly referenced so
+ * they can be reclaimed under memory pressure and re-parsed later.</p>
+ */
+public final class ItemStackTemplate {
+    /**
+     * NBT strings longer than this are held in the soft-reference tier.
+     */
+    private static final int SOFT_REFERENCE_THRESHOLD = 16384;
+
+    /**
+     * The parsed template.
+     *
+     * @param source The NBT string the item was parsed from
+     * @param strong The item, when strongly held
+     * @param soft The item, when softly held
+     */
+    private record Entry(String source, ItemStack strong, SoftReference<ItemStack> soft) {
+        /**
+         * Get the item, if it's still reachable.
+         *
+         * @return The item or null
+         */
+        ItemStack get() {
+            return strong != null ? strong : soft.get();
+        }
+    }
+
+    /**
+     * The current entry. Replaced, never modified.
+     */
+    private volatile Entry entry;
+
+    /**
+     * Get a new item stack from the given NBT string.
+     *
+     * @param nbtString The NBT string
+     * @return The item stack, or null if the NBT string is null
+     */
+    public ItemStack toItemStack(String nbtString) {
+        if (nbtString == null) {
+            return null;
+        }
+
+        Entry current = entry;
+        ItemStack template = current != null && current.source().equals(nbtString) ? current.get() : null;
+
+        if (template == null) {
+            template = NBTItem.convertNBTtoItem(new NBTContainer(nbtString));
+            if (template == null) {
+                return null;
+            }
+
+            if (nbtString.length() > SOFT_REFERENCE_THRESHOLD) {
+                entry = new Entry(nbtString, null, new SoftReference<>(template));
+            } else {
+                entry = new Entry(nbtString, template, null);
+            }
+        }
+
+        return template.clone();
+    }
+}
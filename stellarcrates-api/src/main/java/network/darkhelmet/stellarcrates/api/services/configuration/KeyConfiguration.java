@@ -20,7 +20,6 @@
 
 package network.darkhelmet.stellarcrates.api.services.configuration;
 
-import de.tr7zw.nbtapi.NBTContainer;
 import de.tr7zw.nbtapi.NBTItem;
 
 import org.bukkit.inventory.ItemStack;
@@ -32,6 +31,11 @@ public class KeyConfiguration {
     @Comment("NBT string")
     private String nbtString;
 
+    /**
+     * The parsed item template. Not serialized.
+     */
+    private final transient ItemStackTemplate template = new ItemStackTemplate();
+
     /**
      * Argument-less constructor, needed for deserialization.
      */
@@ -52,6 +56,6 @@ public class KeyConfiguration {
      * @return The item stack
      */
     public ItemStack toItemStack() {
-        return NBTItem.convertNBTtoItem(new NBTContainer(nbtString));
+        return template.toItemStack(nbtString);
     }
 }
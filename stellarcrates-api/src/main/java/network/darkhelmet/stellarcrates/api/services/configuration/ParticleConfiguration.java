@@ -41,15 +41,42 @@ public class ParticleConfiguration {
     @Comment("The particle effect.")
     private ParticleEffect effect;
 
+    @Comment("Height in blocks of the `BEAM`, `HELIX` and `SPIRAL` shapes.")
+    private double height = 2;
+
     @Comment("""
             Particle positions default to the center of the crate's block space.
             Use this offset to shift its location.
             """)
     private Vector positionOffset = new Vector(0, 1, 0);
 
-    @Comment("The range of possible particle locations.")
+    @Comment("The range of possible particle locations. Only used by the `BOX` shape.")
     private Vector particleRange = new Vector(1, 1, 1);
 
+    @Comment("""
+            How many points of the shape each emission draws, starting from where the last one
+            moved to. 0 draws the whole shape. Not used by the `BOX` shape.
+            """)
+    private int points = 0;
+
+    @Comment("Radius in blocks of the `HELIX`, `RING`, `SPHERE` and `SPIRAL` shapes.")
+    private double radius = 1;
+
+    @Comment("""
+            How many points make up the shape. Higher resolutions draw smoother shapes
+            but send more particles.
+            """)
+    private int resolution = 16;
+
+    @Comment("""
+            The shape particles trace. `BOX` picks random spots within `particleRange`.
+            `BEAM`, `HELIX`, `RING`, `SPHERE` and `SPIRAL` draw `points` of their shape each emission.
+            """)
+    private ParticleShape shape = ParticleShape.BOX;
+
+    @Comment("How many points along the shape the start of each emission moves.")
+    private int step = 1;
+
     @Comment("Set how close (in blocks) players need to be to see particles.")
     private int visibilityRange = 8;
 
@@ -71,6 +98,15 @@ public class ParticleConfiguration {
         return effect;
     }
 
+    /**
+     * Get the shape height.
+     *
+     * @return The height
+     */
+    public double height() {
+        return height;
+    }
+
     /**
      * Get the position offset.
      *
@@ -107,6 +143,51 @@ public class ParticleConfiguration {
         return particleRange;
     }
 
+    /**
+     * Get the shape points drawn per emission.
+     *
+     * @return The points, 0 for the whole shape
+     */
+    public int points() {
+        return points;
+    }
+
+    /**
+     * Get the shape radius.
+     *
+     * @return The radius
+     */
+    public double radius() {
+        return radius;
+    }
+
+    /**
+     * Get the shape resolution.
+     *
+     * @return The resolution
+     */
+    public int resolution() {
+        return resolution;
+    }
+
+    /**
+     * Get the shape.
+     *
+     * @return The shape
+     */
+    public ParticleShape shape() {
+        return shape;
+    }
+
+    /**
+     * Get the points moved per emission.
+     *
+     * @return The step
+     */
+    public int step() {
+        return step;
+    }
+
     /**
      * Get the visibility range.
      *
@@ -0,0 +1,123 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.api.services.configuration;
+
+import org.spongepowered.configurate.objectmapping.ConfigSerializable;
+import org.spongepowered.configurate.objectmapping.meta.Comment;
+
+@ConfigSerializable
+public class RewardActionConfiguration {
+    @Comment("""
+            The amount. Money for `ECONOMY`, experience points (or levels) for `EXPERIENCE`,
+            the stack size for `ITEM`.
+            """)
+    private double amount = 1;
+
+    @Comment("The effect amplifier for `POTION_EFFECT`, 0 is level I.")
+    private int amplifier = 0;
+
+    @Comment("The effect duration in ticks for `POTION_EFFECT`.")
+    private int duration = 200;
+
+    @Comment("""
+            The material for `ITEM`, the effect name for `POTION_EFFECT`
+            or the permission node for `PERMISSION`.
+            """)
+    private String key;
+
+    @Comment("For `EXPERIENCE`, give levels instead of points.")
+    private boolean levels = false;
+
+    @Comment("The action type: ECONOMY, EXPERIENCE, ITEM, PERMISSION or POTION_EFFECT.")
+    private RewardActionType type;
+
+    /**
+     * Argument-less constructor, needed for deserialization.
+     */
+    public RewardActionConfiguration() {}
+
+    /**
+     * Construct a new reward action configuration.
+     *
+     * @param type The action type
+     * @param key The key
+     * @param amount The amount
+     */
+    public RewardActionConfiguration(RewardActionType type, String key, double amount) {
+        this.type = type;
+        this.key = key;
+        this.amount = amount;
+    }
+
+    /**
+     * Get the amount.
+     *
+     * @return The amount
+     */
+    public double amount() {
+        return amount;
+    }
+
+    /**
+     * Get the amplifier.
+     *
+     * @return The amplifier
+     */
+    public int amplifier() {
+        return amplifier;
+    }
+
+    /**
+     * Get the duration in ticks.
+     *
+     * @return The duration
+     */
+    public int duration() {
+        return duration;
+    }
+
+    /**
+     * Get the key.
+     *
+     * @return The key
+     */
+    public String key() {
+        return key;
+    }
+
+    /**
+     * Whether experience is given as levels.
+     *
+     * @return True if levels
+     */
+    public boolean levels() {
+        return levels;
+    }
+
+    /**
+     * Get the action type.
+     *
+     * @return The action type
+     */
+    public RewardActionType type() {
+        return type;
+    }
+}
@@ -20,11 +20,11 @@
 
 package network.darkhelmet.stellarcrates.api.services.configuration;
 
-import de.tr7zw.nbtapi.NBTContainer;
 import de.tr7zw.nbtapi.NBTItem;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import org.bukkit.inventory.ItemStack;
 import org.spongepowered.configurate.objectmapping.ConfigSerializable;
@@ -32,12 +32,29 @@ import org.spongepowered.configurate.objectmapping.meta.Comment;
 
 @ConfigSerializable
 public class RewardConfiguration {
+    @Comment("""
+            A unique identifier for this reward, generated when missing.
+            Interrupted opens are finished by it, so don't change or copy it between rewards.
+            """)
+    private String identifier = UUID.randomUUID().toString();
+
+    @Comment("""
+            Actions run directly when the reward is given, faster than the equivalent commands.
+            Each has a type (ECONOMY, EXPERIENCE, ITEM, PERMISSION, POTION_EFFECT) and type-specific settings.
+            """)
+    private List<RewardActionConfiguration> actions = new ArrayList<>();
+
     @Comment("Commands to run when the award is given.")
     private List<String> commands = new ArrayList<>();
 
     @Comment("NBT string")
     private String nbtString;
 
+    /**
+     * The parsed item template. Not serialized.
+     */
+    private final transient ItemStackTemplate template = new ItemStackTemplate();
+
     @Comment("""
             True if the item is what we give to players.
             If you use commands to give items, set this to false.
@@ -72,7 +89,25 @@ public class RewardConfiguration {
      * @return The item stack
      */
     public ItemStack toItemStack() {
-        return NBTItem.convertNBTtoItem(new NBTContainer(nbtString));
+        return template.toItemStack(nbtString);
+    }
+
+    /**
+     * Get the actions.
+     *
+     * @return The actions
+     */
+    public List<RewardActionConfiguration> actions() {
+        return actions;
+    }
+
+    /**
+     * Get the identifier.
+     *
+     * @return The identifier
+     */
+    public String identifier() {
+        return identifier;
     }
 
     /**
@@ -30,6 +30,18 @@ import org.spongepowered.configurate.objectmapping.meta.Comment;
 
 @ConfigSerializable
 public class StellarCratesConfiguration {
+    @Comment("""
+        The most opening animations updated per tick. Any others wait for a later tick,
+        they skip frames but still finish on time.
+        """)
+    private int animationSessionsPerTick = 25;
+
+    @Comment("""
+        Milliseconds per tick spent running reward commands. Commands over the budget
+        wait for the next tick, so mass openings don't spike the tick time.
+        """)
+    private double commandBudgetMillis = 2;
+
     @Comment("Enable plugin debug mode. Produces extra logging to help diagnose issues.")
     private boolean debug = false;
 
@@ -42,9 +54,65 @@ public class StellarCratesConfiguration {
     @Comment("The default weight used for rewards.")
     private double defaultWeight = 100;
 
+    @Comment("""
+        Ticks to ignore further crate clicks from a player after one is handled.
+        Stops autoclickers and client double-clicks from flooding crate opens.
+        """)
+    private int interactionCooldownTicks = 4;
+
+    @Comment("""
+        How held items are matched against crate keys. `STRICT` requires the item to be
+        identical to the key, `IDENTIFIER` only checks the crate identifier stored on keys
+        so renamed or re-lored keys still work. Keys without an identifier are always matched strictly.
+        """)
+    private KeyMatchMode keyMatchMode = KeyMatchMode.STRICT;
+
     @Comment("Effects to play when a crate key is used incorrectly.")
     private KeyRejectionEffectsConfigutation keyRejectionEffects;
 
+    @Comment("""
+        The most crate particles a player receives per second. When more would be sent,
+        higher priority crates are shown first. Set to 0 for no limit.
+        """)
+    private int particleBudget = 600;
+
+    @Comment("""
+        Milliseconds per tick at which particles stop entirely. Between `particleReduceMspt`
+        and this, particles are emitted less often and in smaller amounts.
+        """)
+    private double particleMaxMspt = 100;
+
+    @Comment("""
+        TPS at which particles stop entirely. Between `particleReduceTps`
+        and this, particles are emitted less often and in smaller amounts.
+        """)
+    private double particleMinTps = 12;
+
+    @Comment("""
+        Milliseconds per tick above which particles are reduced. Tick time is measured
+        between ticks, so it reads 50 on a healthy server.
+        """)
+    private double particleReduceMspt = 55;
+
+    @Comment("TPS below which particles are reduced.")
+    private double particleReduceTps = 18;
+
+    @Comment("""
+        Threads computing crate particles. 0 uses half the available cores, at most 4.
+        Requires a restart to change.
+        """)
+    private int particleThreads = 0;
+
+    @Comment("""
+        The random number source for rewards and particles. `THREAD_LOCAL` is fastest.
+        `SECURE` uses a cryptographically strong generator everywhere. `SEEDED` uses
+        `randomSeed` so results are repeatable, meant for testing only.
+        """)
+    private RandomMode randomMode = RandomMode.THREAD_LOCAL;
+
+    @Comment("The seed used when randomMode is `SEEDED`.")
+    private long randomSeed = 0;
+
     @Comment("The version of the serializer.")
     private short serializerVersion;
 
@@ -55,6 +123,24 @@ public class StellarCratesConfiguration {
         this.serializerVersion = mcVersion();
     }
 
+    /**
+     * Get the maximum animation sessions updated per tick.
+     *
+     * @return The animation sessions per tick
+     */
+    public int animationSessionsPerTick() {
+        return animationSessionsPerTick;
+    }
+
+    /**
+     * Get the command budget in milliseconds per tick.
+     *
+     * @return The command budget
+     */
+    public double commandBudgetMillis() {
+        return commandBudgetMillis;
+    }
+
     /**
      * Get the debug setting.
      *
@@ -80,6 +166,24 @@ public class StellarCratesConfiguration {
         return defaultWeight;
     }
 
+    /**
+     * Get the interaction cooldown in ticks.
+     *
+     * @return The interaction cooldown
+     */
+    public int interactionCooldownTicks() {
+        return interactionCooldownTicks;
+    }
+
+    /**
+     * Get the key match mode.
+     *
+     * @return The key match mode
+     */
+    public KeyMatchMode keyMatchMode() {
+        return keyMatchMode;
+    }
+
     /**
      * Get the key rejection effects.
      *
@@ -89,6 +193,78 @@ public class StellarCratesConfiguration {
         return keyRejectionEffects;
     }
 
+    /**
+     * Get the particle budget per player per second.
+     *
+     * @return The particle budget
+     */
+    public int particleBudget() {
+        return particleBudget;
+    }
+
+    /**
+     * Get the milliseconds per tick at which particles stop.
+     *
+     * @return The maximum mspt
+     */
+    public double particleMaxMspt() {
+        return particleMaxMspt;
+    }
+
+    /**
+     * Get the TPS at which particles stop.
+     *
+     * @return The minimum tps
+     */
+    public double particleMinTps() {
+        return particleMinTps;
+    }
+
+    /**
+     * Get the milliseconds per tick above which particles are reduced.
+     *
+     * @return The reduce mspt
+     */
+    public double particleReduceMspt() {
+        return particleReduceMspt;
+    }
+
+    /**
+     * Get the TPS below which particles are reduced.
+     *
+     * @return The reduce tps
+     */
+    public double particleReduceTps() {
+        return particleReduceTps;
+    }
+
+    /**
+     * Get the number of particle threads.
+     *
+     * @return The particle threads, 0 for automatic
+     */
+    public int particleThreads() {
+        return particleThreads;
+    }
+
+    /**
+     * Get the random mode.
+     *
+     * @return The random mode
+     */
+    public RandomMode randomMode() {
+        return randomMode;
+    }
+
+    /**
+     * Get the random seed.
+     *
+     * @return The random seed
+     */
+    public long randomSeed() {
+        return randomSeed;
+    }
+
     /**
      * Get the serializer version.
      *
@@ -76,7 +76,9 @@ public interface ICrate {
     Optional<ICrateInstance> crateInstance(Location location);
 
     /**
-     * Get a map of crate instances.
+     * Get a read-only snapshot of crate instances.
+     *
+     * <p>Safe to iterate from any thread.</p>
      *
      * @return The map of crate instances
      */
@@ -127,6 +129,25 @@ public interface ICrate {
      */
     Optional<IReward> randomReward();
 
+    /**
+     * Choose many random weighted rewards at once.
+     *
+     * <p>Large counts are drawn as a single multinomial, so the cost depends
+     * on the number of rewards rather than the count.</p>
+     *
+     * @param count The number of rewards to draw
+     * @return How many times each reward was drawn, in reward order. Empty if there are no rewards
+     */
+    Map<IReward, Integer> randomRewards(int count);
+
+    /**
+     * Get a reward by its identifier.
+     *
+     * @param identifier The reward identifier
+     * @return The reward, if any
+     */
+    Optional<IReward> reward(String identifier);
+
     /**
      * Get the rewards.
      *
@@ -134,6 +155,25 @@ public interface ICrate {
      */
     List<IReward> rewards();
 
+    /**
+     * Get the current weight of a reward, including any runtime adjustment.
+     *
+     * @param reward The reward
+     * @return The weight
+     */
+    double rewardWeight(IReward reward);
+
+    /**
+     * Adjust the weight of a reward at runtime.
+     *
+     * <p>Runtime weights are not saved to the crate configuration and reset on reload.
+     * Crates that change weights often should use the `FENWICK` reward sampler.</p>
+     *
+     * @param reward The reward
+     * @param weight The new weight
+     */
+    void rewardWeight(IReward reward, double weight);
+
     /**
      * Unload all intances from the world.
      */
@@ -30,6 +30,18 @@ public interface ICrateInstance {
      */
     ICrate crate();
 
+    /**
+     * Load this instance into the world. Creates holograms, enables ticking.
+     */
+    void load();
+
+    /**
+     * Whether this instance is currently loaded into the world.
+     *
+     * @return True if loaded
+     */
+    boolean loaded();
+
     /**
      * Get the location.
      *
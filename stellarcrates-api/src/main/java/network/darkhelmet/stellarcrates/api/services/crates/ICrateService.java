@@ -24,6 +24,7 @@ import java.util.Map;
 import java.util.Optional;
 
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 
 public interface ICrateService {
@@ -44,7 +45,24 @@ public interface ICrateService {
     Optional<ICrateInstance> crateInstance(Location location);
 
     /**
-     * Get all loaded crates.
+     * Get a crate instance for the given block coordinates.
+     *
+     * <p>Cheaper than the location variant, suitable for hot paths like block events.</p>
+     *
+     * @param world The world
+     * @param x The block x
+     * @param y The block y
+     * @param z The block z
+     * @return The crate instance, or null if none
+     */
+    ICrateInstance crateInstance(World world, int x, int y, int z);
+
+    /**
+     * Get a read-only snapshot of all loaded crates.
+     *
+     * <p>Safe to iterate from any thread.</p>
+     *
+     * @return The crates
      */
     Map<String, ICrate> crates();
 
@@ -71,4 +89,20 @@ public interface ICrateService {
      * @param player The player
      */
     void openCrate(ICrateInstance crateInstance, Player player);
+
+    /**
+     * Attempt to open a crate several times at once for the given player.
+     *
+     * <p>Keys are deducted once, identical rewards are merged into full stacks
+     * and the player gets a single summary message.
+     * Opens at most as many times as the player holds keys.</p>
+     *
+     * <p>Keys are deducted immediately, rewards are drawn off the main thread
+     * and given to the player on a following tick.</p>
+     *
+     * @param crateInstance The crate instance
+     * @param player The player
+     * @param count The number of times to open
+     */
+    void openCrate(ICrateInstance crateInstance, Player player, int count);
 }
@@ -20,6 +20,8 @@
 
 package network.darkhelmet.stellarcrates.api.services.crates;
 
+import java.util.Collection;
+
 import network.darkhelmet.stellarcrates.api.services.configuration.RewardConfiguration;
 
 import org.bukkit.inventory.Inventory;
@@ -37,8 +39,9 @@ public interface IReward {
      * Deliver the reward item to an inventory.
      *
      * @param inventory The inventory
+     * @return Any items that didn't fit
      */
-    void deliverTo(Inventory inventory);
+    Collection<ItemStack> deliverTo(Inventory inventory);
 
     /**
      * Returns a new item stack.
@@ -32,15 +32,31 @@ import java.util.List;
 import network.darkhelmet.stellarcrates.api.IStellarCrates;
 import network.darkhelmet.stellarcrates.api.services.crates.ICrateService;
 import network.darkhelmet.stellarcrates.commands.AboutCommand;
+import network.darkhelmet.stellarcrates.commands.ClaimCommand;
 import network.darkhelmet.stellarcrates.commands.CrateCommand;
 import network.darkhelmet.stellarcrates.commands.ImportCommand;
 import network.darkhelmet.stellarcrates.commands.ReloadCommand;
+import network.darkhelmet.stellarcrates.commands.SimulateCommand;
+import network.darkhelmet.stellarcrates.commands.StatsCommand;
 import network.darkhelmet.stellarcrates.injection.StellarCratesModule;
 import network.darkhelmet.stellarcrates.listeners.BlockPlaceListener;
+import network.darkhelmet.stellarcrates.listeners.ChunkListener;
 import network.darkhelmet.stellarcrates.listeners.PlayerInteractListener;
+import network.darkhelmet.stellarcrates.listeners.PlayerJoinListener;
+import network.darkhelmet.stellarcrates.listeners.PlayerMoveListener;
+import network.darkhelmet.stellarcrates.listeners.PlayerQuitListener;
+import network.darkhelmet.stellarcrates.services.animations.AnimationService;
 import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
-import network.darkhelmet.stellarcrates.services.crates.CrateInstance;
 import network.darkhelmet.stellarcrates.services.crates.CrateService;
+import network.darkhelmet.stellarcrates.services.mailbox.MailboxService;
+import network.darkhelmet.stellarcrates.services.openings.CommandDispatcher;
+import network.darkhelmet.stellarcrates.services.openings.OpeningJournal;
+import network.darkhelmet.stellarcrates.services.openings.OpeningService;
+import network.darkhelmet.stellarcrates.services.particles.ParticleService;
+import network.darkhelmet.stellarcrates.services.particles.ServerLoadMonitor;
+import network.darkhelmet.stellarcrates.services.players.InteractionDebouncer;
+import network.darkhelmet.stellarcrates.services.players.PlayerIndex;
+import network.darkhelmet.stellarcrates.services.players.ProximityTracker;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -48,7 +64,6 @@ import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitTask;
 
 public class StellarCrates extends JavaPlugin implements IStellarCrates {
     /**
@@ -77,9 +92,34 @@ public class StellarCrates extends JavaPlugin implements IStellarCrates {
     private ConfigurationService configurationService;
 
     /**
-     * Cache the tick task used to tick crates.
+     * The animation service.
      */
-    private BukkitTask tickTask;
+    private AnimationService animationService;
+
+    /**
+     * The mailbox service.
+     */
+    private MailboxService mailboxService;
+
+    /**
+     * The opening service.
+     */
+    private OpeningService openingService;
+
+    /**
+     * The particle service.
+     */
+    private ParticleService particleService;
+
+    /**
+     * The reward command dispatcher.
+     */
+    private CommandDispatcher commandDispatcher;
+
+    /**
+     * The opening journal.
+     */
+    private OpeningJournal openingJournal;
 
     /**
      * Get this instance.
@@ -116,12 +156,25 @@ public class StellarCrates extends JavaPlugin implements IStellarCrates {
 
         logger.info("Serializer version: {}", configurationService.stellarCratesConfig().serializerVersion());
 
+        // Recover interrupted opens before any new ones are journaled
+        openingJournal = injector.getInstance(OpeningJournal.class);
+        openingJournal.open();
+
         CrateService crateService = injector.getInstance(CrateService.class);
 
+        animationService = injector.getInstance(AnimationService.class);
+        mailboxService = injector.getInstance(MailboxService.class);
+        openingService = injector.getInstance(OpeningService.class);
+        commandDispatcher = injector.getInstance(CommandDispatcher.class);
+
         if (isEnabled()) {
             // Register listeners
             getServer().getPluginManager().registerEvents(injector.getInstance(BlockPlaceListener.class), this);
+            getServer().getPluginManager().registerEvents(injector.getInstance(ChunkListener.class), this);
             getServer().getPluginManager().registerEvents(injector.getInstance(PlayerInteractListener.class), this);
+            getServer().getPluginManager().registerEvents(injector.getInstance(PlayerJoinListener.class), this);
+            getServer().getPluginManager().registerEvents(injector.getInstance(PlayerMoveListener.class), this);
+            getServer().getPluginManager().registerEvents(injector.getInstance(PlayerQuitListener.class), this);
 
             // Register commands
             BukkitCommandManager<CommandSender> commandManager = BukkitCommandManager.create(this);
@@ -141,18 +194,37 @@ public class StellarCrates extends JavaPlugin implements IStellarCrates {
                 crateService.crates().keySet().stream().toList());
 
             commandManager.registerCommand(injector.getInstance(AboutCommand.class));
+            commandManager.registerCommand(injector.getInstance(ClaimCommand.class));
             commandManager.registerCommand(injector.getInstance(CrateCommand.class));
             commandManager.registerCommand(injector.getInstance(ImportCommand.class));
             commandManager.registerCommand(injector.getInstance(ReloadCommand.class));
+            commandManager.registerCommand(injector.getInstance(SimulateCommand.class));
+            commandManager.registerCommand(injector.getInstance(StatsCommand.class));
+
+            // Advance animations, apply prepared crate opens and run reward commands every tick
+            animationService.start();
+            openingService.start();
+            commandDispatcher.start();
+
+            // Players already online (after a reload) won't join again
+            for (Player player : getServer().getOnlinePlayers()) {
+                mailboxService.load(player);
+                crateService.finishIncompleteOpens(player);
+            }
+
+            // Index player positions every tick and count ticks for click debouncing
+            injector.getInstance(PlayerIndex.class).start();
+            injector.getInstance(InteractionDebouncer.class).start();
 
-            // Run our "play" task that handles repeating tasks like playing particles, etc.
-            tickTask = getServer().getScheduler().runTaskTimerAsynchronously(this, () -> {
-                crateService.crates().values().forEach(crate -> {
-                    crate.crateInstances().values().forEach(crateInstance -> {
-                        ((CrateInstance) crateInstance).tick();
-                    });
-                });
-            }, 0, 5L);
+            // Track which crate instances have players nearby, including anyone already online
+            injector.getInstance(ProximityTracker.class).refresh();
+
+            // Sample server load so particles can back off
+            injector.getInstance(ServerLoadMonitor.class).start();
+
+            // Tick crate particles. Each crate decides on which ticks it actually emits.
+            particleService = injector.getInstance(ParticleService.class);
+            particleService.start();
         }
     }
 
@@ -197,8 +269,32 @@ public class StellarCrates extends JavaPlugin implements IStellarCrates {
     public void onDisable() {
         super.onDisable();
 
-        if (tickTask != null) {
-            tickTask.cancel();
+        if (particleService != null) {
+            particleService.shutdown();
+        }
+
+        // Reveal every animating open so it can be applied
+        if (animationService != null) {
+            animationService.shutdown();
+        }
+
+        // Apply any opens still in flight, their keys are already gone
+        if (openingService != null) {
+            openingService.shutdown();
+        }
+
+        // Run every queued reward command, players have already earned them
+        if (commandDispatcher != null) {
+            commandDispatcher.flush();
+        }
+
+        // Write mailboxes last, applying opens may have added to them
+        if (mailboxService != null) {
+            mailboxService.shutdown();
+        }
+
+        if (openingJournal != null) {
+            openingJournal.close();
         }
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.commands;
+
+import com.google.inject.Inject;
+
+import dev.triumphteam.cmd.core.BaseCommand;
+import dev.triumphteam.cmd.core.annotation.Command;
+import dev.triumphteam.cmd.core.annotation.SubCommand;
+
+import network.darkhelmet.stellarcrates.services.mailbox.MailboxService;
+
+import org.bukkit.entity.Player;
+
+@Command(value = "stellarcrates", alias = {"crates"})
+public class ClaimCommand extends BaseCommand {
+    /**
+     * The mailbox service.
+     */
+    private final MailboxService mailboxService;
+
+    /**
+     * Construct the claim command.
+     *
+     * @param mailboxService The mailbox service
+     */
+    @Inject
+    public ClaimCommand(MailboxService mailboxService) {
+        this.mailboxService = mailboxService;
+    }
+
+    /**
+     * Run the claim command.
+     *
+     * @param player The player
+     */
+    @SubCommand("claim")
+    public void onClaim(final Player player) {
+        mailboxService.openClaim(player);
+    }
+}
@@ -117,9 +117,10 @@ public class CrateCommand extends BaseCommand {
             }
         } else {
             Block block = player.getTargetBlock(transparent, 5);
-            Optional<ICrateInstance> crateOptional = crateService.crateInstance(block.getLocation());
-            if (crateOptional.isPresent()) {
-                crate = crateOptional.get().crate();
+            ICrateInstance crateInstance = crateService.crateInstance(
+                block.getWorld(), block.getX(), block.getY(), block.getZ());
+            if (crateInstance != null) {
+                crate = crateInstance.crate();
             }
         }
 
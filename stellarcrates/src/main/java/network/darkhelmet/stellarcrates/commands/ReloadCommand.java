@@ -32,6 +32,7 @@ import java.io.IOException;
 import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
 import network.darkhelmet.stellarcrates.services.crates.CrateService;
 import network.darkhelmet.stellarcrates.services.messages.MessageService;
+import network.darkhelmet.stellarcrates.services.players.ProximityTracker;
 import network.darkhelmet.stellarcrates.services.translation.TranslationService;
 
 import org.bukkit.command.CommandSender;
@@ -48,6 +49,11 @@ public class ReloadCommand extends BaseCommand {
      */
     private final MessageService messageService;
 
+    /**
+     * The proximity tracker.
+     */
+    private final ProximityTracker proximityTracker;
+
     /**
      * The translation service.
      */
@@ -63,6 +69,7 @@ public class ReloadCommand extends BaseCommand {
      *
      * @param crateService The crate service
      * @param messageService The message service
+     * @param proximityTracker The proximity tracker
      * @param translationService The translation service
      * @param configurationService The configuration service
      */
@@ -70,10 +77,12 @@ public class ReloadCommand extends BaseCommand {
     public ReloadCommand(
             CrateService crateService,
             MessageService messageService,
+            ProximityTracker proximityTracker,
             TranslationService translationService,
             ConfigurationService configurationService) {
         this.crateService = crateService;
         this.messageService = messageService;
+        this.proximityTracker = proximityTracker;
         this.translationService = translationService;
         this.configurationService = configurationService;
     }
@@ -86,11 +95,19 @@ public class ReloadCommand extends BaseCommand {
     @SubCommand("reloadconfig")
     @Permission("stellarcrates.admin")
     public void onReloadConfig(final CommandSender sender) {
-        configurationService.loadConfigurations();
+        boolean started = crateService.reloadAsync(timings -> {
+            // Visibility ranges may have changed
+            proximityTracker.refresh();
 
-        crateService.reload();
+            String duration = String.format("%.1f", timings.totalMillis());
+            String stall = String.format("%.1f", timings.mainThreadMillis());
 
-        messageService.reloadedConfig(sender);
+            messageService.reloadedConfig(sender, duration, stall);
+        }, () -> messageService.errorReloadConfig(sender));
+
+        if (!started) {
+            messageService.errorReloadInProgress(sender);
+        }
     }
 
     /**
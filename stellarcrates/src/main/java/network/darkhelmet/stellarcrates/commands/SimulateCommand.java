@@ -0,0 +1,128 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.commands;
+
+import com.google.inject.Inject;
+
+import dev.triumphteam.cmd.bukkit.annotation.Permission;
+import dev.triumphteam.cmd.core.BaseCommand;
+import dev.triumphteam.cmd.core.annotation.Command;
+import dev.triumphteam.cmd.core.annotation.SubCommand;
+import dev.triumphteam.cmd.core.annotation.Suggestion;
+
+import java.util.Optional;
+
+import network.darkhelmet.stellarcrates.api.services.crates.ICrate;
+import network.darkhelmet.stellarcrates.services.crates.Crate;
+import network.darkhelmet.stellarcrates.services.crates.CrateService;
+import network.darkhelmet.stellarcrates.services.crates.samplers.SimulationResult;
+import network.darkhelmet.stellarcrates.services.messages.MessageService;
+
+import org.bukkit.command.CommandSender;
+
+@Command(value = "stellarcrates", alias = {"crates"})
+public class SimulateCommand extends BaseCommand {
+    /**
+     * The number of draws when none are given.
+     */
+    private static final int DEFAULT_DRAWS = 1_000_000;
+
+    /**
+     * The crate service.
+     */
+    private final CrateService crateService;
+
+    /**
+     * The message service.
+     */
+    private final MessageService messageService;
+
+    /**
+     * Construct the simulate command.
+     *
+     * @param crateService The crate service
+     * @param messageService The message service
+     */
+    @Inject
+    public SimulateCommand(CrateService crateService, MessageService messageService) {
+        this.crateService = crateService;
+        this.messageService = messageService;
+    }
+
+    /**
+     * Run the simulate command.
+     *
+     * @param sender The command sender
+     * @param crateId The crate identifier
+     * @param draws The number of draws
+     */
+    @SubCommand("simulate")
+    @Permission("stellarcrates.admin")
+    public void onSimulate(
+        final CommandSender sender,
+        @Suggestion("crates") final String crateId,
+        @dev.triumphteam.cmd.core.annotation.Optional Integer draws
+    ) {
+        Optional<ICrate> crateOptional = crateService.crate(crateId);
+        if (crateOptional.isEmpty()) {
+            messageService.errorInvalidCrateId(sender);
+            return;
+        }
+
+        draws = draws == null ? DEFAULT_DRAWS : draws;
+        if (draws <= 0) {
+            messageService.errorInvalidSimulationDraws(sender);
+            return;
+        }
+
+        ICrate crate = crateOptional.get();
+        boolean started = crateService.simulate((Crate) crate, draws, result -> report(sender, result));
+        if (!started) {
+            messageService.errorCrateEmpty(sender, crate);
+            return;
+        }
+
+        messageService.simulationStarted(sender, crate, draws);
+    }
+
+    /**
+     * Send the simulation results to the sender.
+     *
+     * @param sender The command sender
+     * @param result The simulation result
+     */
+    private void report(CommandSender sender, SimulationResult result) {
+        for (int i = 0; i < result.rewards().size(); i++) {
+            String observed = String.format("%.3f", result.observed(i) * 100);
+            String expected = String.format("%.3f", result.expected(i) * 100);
+
+            messageService.simulationReward(sender, result.rewards().get(i), observed, expected);
+        }
+
+        String duration = String.format("%.1f", result.millis());
+        String throughput = String.format("%,.0f", result.drawsPerSecond());
+        String statistic = String.format("%.2f", result.chiSquare());
+        String critical = String.format("%.2f", result.criticalValue());
+
+        messageService.simulationComplete(sender, String.format("%,d", result.draws()), duration, throughput,
+            statistic, result.degreesOfFreedom(), critical);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.commands;
+
+import com.google.inject.Inject;
+
+import dev.triumphteam.cmd.bukkit.annotation.Permission;
+import dev.triumphteam.cmd.core.BaseCommand;
+import dev.triumphteam.cmd.core.annotation.Command;
+import dev.triumphteam.cmd.core.annotation.SubCommand;
+
+import network.darkhelmet.stellarcrates.services.messages.MessageService;
+import network.darkhelmet.stellarcrates.services.openings.CommandDispatcher;
+
+import org.bukkit.command.CommandSender;
+
+@Command(value = "stellarcrates", alias = {"crates"})
+public class StatsCommand extends BaseCommand {
+    /**
+     * The command dispatcher.
+     */
+    private final CommandDispatcher commandDispatcher;
+
+    /**
+     * The message service.
+     */
+    private final MessageService messageService;
+
+    /**
+     * Construct the stats command.
+     *
+     * @param commandDispatcher The command dispatcher
+     * @param messageService The message service
+     */
+    @Inject
+    public StatsCommand(CommandDispatcher commandDispatcher, MessageService messageService) {
+        this.commandDispatcher = commandDispatcher;
+        this.messageService = messageService;
+    }
+
+    /**
+     * Run the stats command.
+     *
+     * @param sender The command sender
+     */
+    @SubCommand("stats")
+    @Permission("stellarcrates.admin")
+    public void onStats(final CommandSender sender) {
+        CommandDispatcher.Metrics metrics = commandDispatcher.metrics();
+
+        messageService.statsCommandQueue(sender,
+            metrics.depth(),
+            metrics.peakDepth(),
+            String.format("%,d", metrics.dispatched()),
+            String.format("%.1f", metrics.averageWaitMillis()),
+            String.format("%.1f", metrics.maxWaitMillis()),
+            String.format("%.2f", metrics.lastTickMillis()));
+    }
+}
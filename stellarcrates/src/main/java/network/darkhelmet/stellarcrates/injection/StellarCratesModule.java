@@ -37,12 +37,15 @@ import net.kyori.moonshine.strategy.StandardPlaceholderResolverStrategy;
 import net.kyori.moonshine.strategy.supertype.StandardSupertypeThenInterfaceSupertypeStrategy;
 
 import network.darkhelmet.stellarcrates.StellarCrates;
+import network.darkhelmet.stellarcrates.services.animations.AnimationService;
 import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
 import network.darkhelmet.stellarcrates.services.crates.Crate;
 import network.darkhelmet.stellarcrates.services.crates.CrateService;
 import network.darkhelmet.stellarcrates.services.crates.Reward;
 import network.darkhelmet.stellarcrates.services.gui.GuiService;
 import network.darkhelmet.stellarcrates.services.imports.ImportsService;
+import network.darkhelmet.stellarcrates.services.mailbox.MailboxService;
+import network.darkhelmet.stellarcrates.services.mailbox.MailboxStore;
 import network.darkhelmet.stellarcrates.services.messages.MessageRenderer;
 import network.darkhelmet.stellarcrates.services.messages.MessageSender;
 import network.darkhelmet.stellarcrates.services.messages.MessageService;
@@ -52,6 +55,16 @@ import network.darkhelmet.stellarcrates.services.messages.resolvers.IntegerPlace
 import network.darkhelmet.stellarcrates.services.messages.resolvers.RewardPlaceholderResolver;
 import network.darkhelmet.stellarcrates.services.messages.resolvers.StringPlaceholderResolver;
 import network.darkhelmet.stellarcrates.services.messages.resolvers.TranslatableStringPlaceholderResolver;
+import network.darkhelmet.stellarcrates.services.openings.CommandDispatcher;
+import network.darkhelmet.stellarcrates.services.openings.OpeningJournal;
+import network.darkhelmet.stellarcrates.services.openings.OpeningService;
+import network.darkhelmet.stellarcrates.services.particles.ParticleService;
+import network.darkhelmet.stellarcrates.services.particles.ServerLoadMonitor;
+import network.darkhelmet.stellarcrates.services.players.InteractionDebouncer;
+import network.darkhelmet.stellarcrates.services.players.PlayerIndex;
+import network.darkhelmet.stellarcrates.services.players.ProximityTracker;
+import network.darkhelmet.stellarcrates.services.random.RandomService;
+import network.darkhelmet.stellarcrates.services.rewards.RewardActionService;
 import network.darkhelmet.stellarcrates.services.translation.TranslationKey;
 import network.darkhelmet.stellarcrates.services.translation.TranslationService;
 
@@ -149,6 +162,9 @@ public class StellarCratesModule extends AbstractModule {
         bind(Logger.class).toInstance(this.logger);
         bind(Path.class).toInstance(dataPath);
 
+        // Service - Animations
+        bind(AnimationService.class).in(Singleton.class);
+
         // Service - Configuration
         bind(ConfigurationService.class).in(Singleton.class);
 
@@ -161,12 +177,36 @@ public class StellarCratesModule extends AbstractModule {
         // Service - Imports
         bind(ImportsService.class).in(Singleton.class);
 
+        // Service - Mailbox
+        bind(MailboxService.class).in(Singleton.class);
+        bind(MailboxStore.class).in(Singleton.class);
+
         // Service - Messages
         bind(MessageRenderer.class).in(Singleton.class);
         bind(MessageSender.class).in(Singleton.class);
         bind(ICratePlaceholderResolver.class).in(Singleton.class);
         bind(TranslatableStringPlaceholderResolver.class).in(Singleton.class);
 
+        // Service - Openings
+        bind(CommandDispatcher.class).in(Singleton.class);
+        bind(OpeningJournal.class).in(Singleton.class);
+        bind(OpeningService.class).in(Singleton.class);
+
+        // Service - Particles
+        bind(ParticleService.class).in(Singleton.class);
+        bind(ServerLoadMonitor.class).in(Singleton.class);
+
+        // Service - Players
+        bind(InteractionDebouncer.class).in(Singleton.class);
+        bind(PlayerIndex.class).in(Singleton.class);
+        bind(ProximityTracker.class).in(Singleton.class);
+
+        // Service - Random
+        bind(RandomService.class).in(Singleton.class);
+
+        // Service - Rewards
+        bind(RewardActionService.class).in(Singleton.class);
+
         // Service - Translation
         bind(TranslationService.class).in(Singleton.class);
     }
@@ -0,0 +1,70 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.listeners;
+
+import com.google.inject.Inject;
+
+import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
+import network.darkhelmet.stellarcrates.services.crates.CrateService;
+import network.darkhelmet.stellarcrates.services.messages.MessageService;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+public class ChunkListener extends AbstractListener implements Listener {
+    /**
+     * Construct the listener.
+     *
+     * @param configurationService The configuration service
+     * @param crateService The crate service
+     * @param messageService The message service
+     */
+    @Inject
+    public ChunkListener(
+            ConfigurationService configurationService,
+            CrateService crateService,
+            MessageService messageService) {
+        super(configurationService, crateService, messageService);
+    }
+
+    /**
+     * Listen to chunk load events.
+     *
+     * @param event The event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(final ChunkLoadEvent event) {
+        crateService.crateInstanceRegistry().chunkLoaded(event.getChunk());
+    }
+
+    /**
+     * Listen to chunk unload events.
+     *
+     * @param event The event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(final ChunkUnloadEvent event) {
+        crateService.crateInstanceRegistry().chunkUnloaded(event.getChunk());
+    }
+}
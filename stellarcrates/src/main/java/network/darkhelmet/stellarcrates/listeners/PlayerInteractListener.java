@@ -22,13 +22,12 @@ package network.darkhelmet.stellarcrates.listeners;
 
 import com.google.inject.Inject;
 
-import java.util.Optional;
-
 import network.darkhelmet.stellarcrates.api.services.crates.ICrateInstance;
 import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
 import network.darkhelmet.stellarcrates.services.crates.CrateService;
 import network.darkhelmet.stellarcrates.services.gui.GuiService;
 import network.darkhelmet.stellarcrates.services.messages.MessageService;
+import network.darkhelmet.stellarcrates.services.players.InteractionDebouncer;
 import network.darkhelmet.stellarcrates.utils.NamespacedKeys;
 
 import org.bukkit.Material;
@@ -51,12 +50,18 @@ public class PlayerInteractListener extends AbstractListener implements Listener
      */
     private final GuiService guiService;
 
+    /**
+     * The interaction debouncer.
+     */
+    private final InteractionDebouncer interactionDebouncer;
+
     /**
      * Construct the listener.
      *
      * @param configurationService The configuration service
      * @param crateService The crate service
      * @param guiService The GUI service
+     * @param interactionDebouncer The interaction debouncer
      * @param messageService The message service
      */
     @Inject
@@ -64,10 +69,12 @@ public class PlayerInteractListener extends AbstractListener implements Listener
             ConfigurationService configurationService,
             CrateService crateService,
             GuiService guiService,
+            InteractionDebouncer interactionDebouncer,
             MessageService messageService) {
         super(configurationService, crateService, messageService);
 
         this.guiService = guiService;
+        this.interactionDebouncer = interactionDebouncer;
     }
 
     /**
@@ -88,36 +95,54 @@ public class PlayerInteractListener extends AbstractListener implements Listener
         }
 
         if (event.getAction().equals(Action.LEFT_CLICK_BLOCK)) {
-            Optional<ICrateInstance> crateOptional = crateService.crateInstance(block.getLocation());
-            crateOptional.ifPresent(crateInstance -> {
-                guiService.open(crateInstance.crate(), player);
+            ICrateInstance crateInstance = crateService.crateInstance(
+                block.getWorld(), block.getX(), block.getY(), block.getZ());
+            if (crateInstance == null) {
+                return;
+            }
 
-                event.setCancelled(true);
-            });
+            event.setCancelled(true);
+
+            // Drop repeat crate clicks, other interactions are never touched
+            if (!interactionDebouncer.debounced(player)) {
+                interactionDebouncer.record(player);
+                guiService.open(crateInstance.crate(), player);
+            }
 
             return;
         }
 
         if (event.getAction().equals(Action.RIGHT_CLICK_BLOCK)) {
-            // Check if holding a crate key and always cancel
-            ItemStack itemStack = player.getInventory().getItemInMainHand();
-            if (!itemStack.getType().equals(Material.AIR)) {
-                ItemMeta meta = itemStack.getItemMeta();
-                if (meta != null) {
-                    PersistentDataContainer pdc = meta.getPersistentDataContainer();
-                    if (pdc.has(NamespacedKeys.CRATE_KEY, PersistentDataType.STRING)) {
-                        event.setCancelled(true);
+            // Look up the crate first, clicks on crates never need the held item's meta
+            ICrateInstance crateInstance = crateService.crateInstance(
+                block.getWorld(), block.getX(), block.getY(), block.getZ());
+            if (crateInstance == null) {
+                // Not a crate, but still never let a crate key be used on it
+                ItemStack itemStack = player.getInventory().getItemInMainHand();
+                if (!itemStack.getType().equals(Material.AIR)) {
+                    ItemMeta meta = itemStack.getItemMeta();
+                    if (meta != null) {
+                        PersistentDataContainer pdc = meta.getPersistentDataContainer();
+                        if (pdc.has(NamespacedKeys.CRATE_KEY, PersistentDataType.STRING)) {
+                            event.setCancelled(true);
+                        }
                     }
                 }
+
+                return;
             }
 
-            // Attempt to open the crate and reward player
-            Optional<ICrateInstance> crateInstanceOptional = crateService.crateInstance(block.getLocation());
-            crateInstanceOptional.ifPresent(crate -> {
-                crateService.openCrate(crateInstanceOptional.get(), player);
+            event.setCancelled(true);
+
+            // Drop repeat crate clicks, other interactions are never touched
+            if (!interactionDebouncer.debounced(player)) {
+                interactionDebouncer.record(player);
 
-                event.setCancelled(true);
-            });
+                // Attempt to open the crate and reward player, sneaking opens the whole held stack of keys
+                ItemStack itemStack = player.getInventory().getItemInMainHand();
+                int count = player.isSneaking() ? Math.max(1, itemStack.getAmount()) : 1;
+                crateService.openCrate(crateInstance, player, count);
+            }
         }
     }
 }
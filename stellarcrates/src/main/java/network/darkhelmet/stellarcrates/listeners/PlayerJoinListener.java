@@ -0,0 +1,80 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.listeners;
+
+import com.google.inject.Inject;
+
+import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
+import network.darkhelmet.stellarcrates.services.crates.CrateService;
+import network.darkhelmet.stellarcrates.services.mailbox.MailboxService;
+import network.darkhelmet.stellarcrates.services.messages.MessageService;
+import network.darkhelmet.stellarcrates.services.players.ProximityTracker;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+public class PlayerJoinListener extends AbstractListener implements Listener {
+    /**
+     * The mailbox service.
+     */
+    private final MailboxService mailboxService;
+
+    /**
+     * The proximity tracker.
+     */
+    private final ProximityTracker proximityTracker;
+
+    /**
+     * Construct the listener.
+     *
+     * @param configurationService The configuration service
+     * @param crateService The crate service
+     * @param mailboxService The mailbox service
+     * @param messageService The message service
+     * @param proximityTracker The proximity tracker
+     */
+    @Inject
+    public PlayerJoinListener(
+            ConfigurationService configurationService,
+            CrateService crateService,
+            MailboxService mailboxService,
+            MessageService messageService,
+            ProximityTracker proximityTracker) {
+        super(configurationService, crateService, messageService);
+
+        this.mailboxService = mailboxService;
+        this.proximityTracker = proximityTracker;
+    }
+
+    /**
+     * Listen to player join events.
+     *
+     * @param event The event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(final PlayerJoinEvent event) {
+        proximityTracker.update(event.getPlayer(), event.getPlayer().getLocation());
+        mailboxService.load(event.getPlayer());
+        crateService.finishIncompleteOpens(event.getPlayer());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.listeners;
+
+import com.google.inject.Inject;
+
+import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
+import network.darkhelmet.stellarcrates.services.crates.CrateService;
+import network.darkhelmet.stellarcrates.services.messages.MessageService;
+import network.darkhelmet.stellarcrates.services.players.ProximityTracker;
+
+import org.bukkit.Location;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+
+public class PlayerMoveListener extends AbstractListener implements Listener {
+    /**
+     * The proximity tracker.
+     */
+    private final ProximityTracker proximityTracker;
+
+    /**
+     * Construct the listener.
+     *
+     * @param configurationService The configuration service
+     * @param crateService The crate service
+     * @param messageService The message service
+     * @param proximityTracker The proximity tracker
+     */
+    @Inject
+    public PlayerMoveListener(
+            ConfigurationService configurationService,
+            CrateService crateService,
+            MessageService messageService,
+            ProximityTracker proximityTracker) {
+        super(configurationService, crateService, messageService);
+
+        this.proximityTracker = proximityTracker;
+    }
+
+    /**
+     * Listen to player move events, only acting when a player crosses into another chunk.
+     *
+     * @param event The event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(final PlayerMoveEvent event) {
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        if (to == null || ((from.getBlockX() >> 4) == (to.getBlockX() >> 4)
+                && (from.getBlockZ() >> 4) == (to.getBlockZ() >> 4) && from.getWorld() == to.getWorld())) {
+            return;
+        }
+
+        proximityTracker.update(event.getPlayer(), to);
+    }
+
+    /**
+     * Listen to player respawn events.
+     *
+     * @param event The event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(final PlayerRespawnEvent event) {
+        proximityTracker.update(event.getPlayer(), event.getRespawnLocation());
+    }
+
+    /**
+     * Listen to player teleport events.
+     *
+     * @param event The event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(final PlayerTeleportEvent event) {
+        if (event.getTo() != null) {
+            proximityTracker.update(event.getPlayer(), event.getTo());
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.animations;
+
+import dev.triumphteam.gui.builder.item.ItemBuilder;
+import dev.triumphteam.gui.components.GuiAction;
+import dev.triumphteam.gui.guis.Gui;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.random.RandomGenerator;
+
+import net.kyori.adventure.text.Component;
+
+import network.darkhelmet.stellarcrates.api.services.configuration.AnimationType;
+import network.darkhelmet.stellarcrates.api.services.crates.ICrate;
+import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+
+import org.bukkit.Material;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Everything a crate's opening animation needs, computed once per crate.
+ *
+ * <p>Rewards are laid out on a reel, weighted by the crate's current sampler weights and
+ * shuffled with a fixed seed. Every reel position has a frame holding the item for each
+ * animated slot, so drawing a frame is just copying references into the inventory.
+ * Guis are pooled and reused. Frames are rebuilt once the crate's rewards or weights change.</p>
+ */
+public class AnimationFrames {
+    /**
+     * Where one animation starts and lands.
+     *
+     * @param start The starting reel position
+     * @param landing The reel index the reward lands on
+     * @param substitute Shown at the landing index instead of the reel item, or null
+     */
+    public record Spin(int start, int landing, ItemStack substitute) {}
+
+    /**
+     * Where items move and how far they travel.
+     *
+     * @param rows The gui rows
+     * @param slots The animated slots, in the order items move through them
+     * @param pointer The index into slots where the reward lands
+     * @param markers Slots marking the pointer
+     * @param totalSteps How many reel positions an animation moves through
+     * @param duration How many ticks an animation moves for
+     */
+    private record Layout(int rows, int[] slots, int pointer, int[] markers, int totalSteps, int duration) {}
+
+    /**
+     * A row scrolling past a pointer in the middle.
+     */
+    private static final Layout ROULETTE = new Layout(
+        3, new int[] {9, 10, 11, 12, 13, 14, 15, 16, 17}, 4, new int[] {4, 22}, 40, 60);
+
+    /**
+     * A ring turning clockwise around the center, the reward lands at the top.
+     */
+    private static final Layout SPIN = new Layout(
+        3, new int[] {2, 3, 4, 5, 6, 15, 24, 23, 22, 21, 20, 11}, 2, new int[] {13}, 30, 60);
+
+    /**
+     * The most idle guis kept per crate.
+     */
+    private static final int POOL_SIZE = 8;
+
+    /**
+     * The crate.
+     */
+    private final ICrate crate;
+
+    /**
+     * The rewards the reel was built from.
+     */
+    private final List<IReward> rewards;
+
+    /**
+     * The sampler weights the reel was built from.
+     */
+    private final double[] weights;
+
+    /**
+     * The layout.
+     */
+    private final Layout layout;
+
+    /**
+     * The item in every animated slot, by reel position.
+     */
+    private final ItemStack[][] frames;
+
+    /**
+     * Reel positions of each reward.
+     */
+    private final Map<IReward, int[]> positions = new HashMap<>();
+
+    /**
+     * Reel steps moved after each tick, easing out.
+     */
+    private final int[] steps;
+
+    /**
+     * Idle guis.
+     */
+    private final Deque<Gui> pool = new ArrayDeque<>();
+
+    /**
+     * Run when a player closes one of these guis.
+     */
+    private final GuiAction<InventoryCloseEvent> closeAction;
+
+    /**
+     * Construct the animation frames for a crate.
+     *
+     * @param crate The crate
+     * @param closeAction Run when a player closes one of the guis
+     */
+    public AnimationFrames(ICrate crate, GuiAction<InventoryCloseEvent> closeAction) {
+        this.crate = crate;
+        this.closeAction = closeAction;
+        this.layout = crate.config().animation() == AnimationType.SPIN ? SPIN : ROULETTE;
+
+        // Lay out the reel, each reward shows up about as often as the sampler draws it
+        this.rewards = List.copyOf(crate.rewards());
+        this.weights = weights(crate, rewards);
+        int reelLength = Math.max(layout.slots().length * 2, rewards.size());
+
+        double weightsTotal = 0;
+        for (double weight : weights) {
+            weightsTotal += weight;
+        }
+
+        List<IReward> reel = new ArrayList<>();
+        for (int index = 0; index < rewards.size(); index++) {
+            IReward reward = rewards.get(index);
+            double share = weightsTotal > 0 ? weights[index] / weightsTotal : 1d / rewards.size();
+            int copies = Math.max(1, (int) Math.round(share * reelLength));
+            for (int i = 0; i < copies; i++) {
+                reel.add(reward);
+            }
+        }
+
+        // Seeded so the reel looks the same every time this crate opens
+        Collections.shuffle(reel, new Random(crate.config().identifier().hashCode()));
+
+        Map<IReward, ItemStack> displayItems = new HashMap<>();
+        Map<IReward, List<Integer>> rewardPositions = new HashMap<>();
+        ItemStack[] reelItems = new ItemStack[reel.size()];
+        for (int i = 0; i < reel.size(); i++) {
+            IReward reward = reel.get(i);
+            reelItems[i] = displayItems.computeIfAbsent(reward, IReward::toItemStack);
+            rewardPositions.computeIfAbsent(reward, r -> new ArrayList<>()).add(i);
+        }
+
+        rewardPositions.forEach((reward, list) ->
+            positions.put(reward, list.stream().mapToInt(Integer::intValue).toArray()));
+
+        int[] slots = layout.slots();
+        frames = new ItemStack[reelItems.length][slots.length];
+        for (int position = 0; position < reelItems.length; position++) {
+            for (int i = 0; i < slots.length; i++) {
+                frames[position][i] = reelItems[(position + i) % reelItems.length];
+            }
+        }
+
+        steps = new int[layout.duration() + 1];
+        for (int tick = 0; tick <= layout.duration(); tick++) {
+            double remaining = 1 - (double) tick / layout.duration();
+            steps[tick] = (int) Math.round(layout.totalSteps() * (1 - remaining * remaining * remaining));
+        }
+    }
+
+    /**
+     * Get the current weight of each reward.
+     *
+     * @param crate The crate
+     * @param rewards The crate's rewards
+     * @return The weights, negative weights as zero
+     */
+    private static double[] weights(ICrate crate, List<IReward> rewards) {
+        double[] weights = new double[rewards.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Math.max(0, crate.rewardWeight(rewards.get(i)));
+        }
+
+        return weights;
+    }
+
+    /**
+     * Whether these frames still match a crate's rewards and weights.
+     *
+     * @param crate The crate
+     * @return True if the frames can be reused
+     */
+    public boolean current(ICrate crate) {
+        if (crate != this.crate) {
+            return false;
+        }
+
+        List<IReward> currentRewards = crate.rewards();
+        if (currentRewards.size() != rewards.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < rewards.size(); i++) {
+            if (currentRewards.get(i) != rewards.get(i)) {
+                return false;
+            }
+        }
+
+        return Arrays.equals(weights, weights(crate, rewards));
+    }
+
+    /**
+     * Get the number of ticks an animation moves for.
+     *
+     * @return The duration in ticks
+     */
+    public int duration() {
+        return layout.duration();
+    }
+
+    /**
+     * Choose where an animation starts so the reward lands on the pointer.
+     *
+     * <p>A reward missing from the reel, added since it was built, lands on a random
+     * reel index with its own item shown there instead.</p>
+     *
+     * @param reward The reward
+     * @param random The random generator
+     * @return The spin
+     */
+    public Spin start(IReward reward, RandomGenerator random) {
+        int[] rewardPositions = positions.get(reward);
+
+        int landing;
+        ItemStack substitute = null;
+        if (rewardPositions != null) {
+            landing = rewardPositions[random.nextInt(rewardPositions.length)];
+        } else {
+            landing = random.nextInt(frames.length);
+            substitute = reward.toItemStack();
+        }
+
+        int start = Math.floorMod(landing - layout.pointer() - layout.totalSteps(), frames.length);
+
+        return new Spin(start, landing, substitute);
+    }
+
+    /**
+     * Get the reel position a number of ticks into an animation.
+     *
+     * @param start The starting reel position
+     * @param elapsed The ticks elapsed
+     * @return The reel position
+     */
+    public int position(int start, int elapsed) {
+        return (start + steps[Math.min(elapsed, layout.duration())]) % frames.length;
+    }
+
+    /**
+     * Draw the frame for a reel position.
+     *
+     * @param gui The gui
+     * @param position The reel position
+     * @param spin The spin being drawn
+     */
+    public void render(Gui gui, int position, Spin spin) {
+        // Written straight to the inventory, these slots are never clickable
+        Inventory inventory = gui.getInventory();
+        ItemStack[] frame = frames[position];
+        int[] slots = layout.slots();
+        for (int i = 0; i < slots.length; i++) {
+            boolean substituted = spin.substitute() != null && (position + i) % frames.length == spin.landing();
+            inventory.setItem(slots[i], substituted ? spin.substitute() : frame[i]);
+        }
+    }
+
+    /**
+     * Take an idle gui, or create one.
+     *
+     * @return The gui
+     */
+    public Gui borrow() {
+        Gui gui = pool.poll();
+        if (gui != null) {
+            return gui;
+        }
+
+        gui = Gui.gui()
+            .title(Component.text(crate.config().title()))
+            .rows(layout.rows())
+            .disableAllInteractions()
+            .create();
+
+        for (int marker : layout.markers()) {
+            gui.setItem(marker, ItemBuilder.from(Material.LIME_STAINED_GLASS_PANE)
+                .name(Component.text(" ")).asGuiItem());
+        }
+
+        gui.getFiller().fill(ItemBuilder.from(Material.GRAY_STAINED_GLASS_PANE)
+            .name(Component.text(" ")).asGuiItem());
+
+        gui.setCloseGuiAction(closeAction);
+
+        return gui;
+    }
+
+    /**
+     * Return a gui once its player has closed it.
+     *
+     * @param gui The gui
+     */
+    public void recycle(Gui gui) {
+        if (pool.size() < POOL_SIZE) {
+            pool.push(gui);
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.animations;
+
+import com.google.inject.Inject;
+
+import dev.triumphteam.gui.guis.Gui;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import network.darkhelmet.stellarcrates.StellarCrates;
+import network.darkhelmet.stellarcrates.api.services.crates.ICrate;
+import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
+import network.darkhelmet.stellarcrates.services.random.RandomService;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Sound;
+import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Plays crate opening animations.
+ *
+ * <p>A single task advances every session each tick, up to a configured number of sessions.
+ * Sessions left over are advanced on a later tick. Frames come from how long a session
+ * has been running, so a late session skips frames rather than running long.</p>
+ *
+ * <p>The reward is chosen before the animation starts. Main thread only.</p>
+ */
+public class AnimationService {
+    /**
+     * A player watching an animation.
+     */
+    private static class Session {
+        /**
+         * The player.
+         */
+        private final Player player;
+
+        /**
+         * The gui.
+         */
+        private final Gui gui;
+
+        /**
+         * The crate's animation frames.
+         */
+        private final AnimationFrames frames;
+
+        /**
+         * Where the animation starts and lands.
+         */
+        private final AnimationFrames.Spin spin;
+
+        /**
+         * The tick the session started.
+         */
+        private final long startTick;
+
+        /**
+         * Run when the reward is revealed.
+         */
+        private final Runnable onReveal;
+
+        /**
+         * The reel position last drawn.
+         */
+        private int position = -1;
+
+        /**
+         * Whether the reward has been revealed.
+         */
+        private boolean revealed = false;
+
+        /**
+         * Whether the session has ended.
+         */
+        private boolean ended = false;
+
+        /**
+         * Construct a session.
+         *
+         * @param player The player
+         * @param gui The gui
+         * @param frames The crate's animation frames
+         * @param spin Where the animation starts and lands
+         * @param startTick The tick the session started
+         * @param onReveal Run when the reward is revealed
+         */
+        private Session(
+                Player player, Gui gui, AnimationFrames frames, AnimationFrames.Spin spin, long startTick,
+                Runnable onReveal) {
+            this.player = player;
+            this.gui = gui;
+            this.frames = frames;
+            this.spin = spin;
+            this.startTick = startTick;
+            this.onReveal = onReveal;
+        }
+    }
+
+    /**
+     * How long the revealed reward stays on screen, in ticks.
+     */
+    private static final int HOLD_TICKS = 30;
+
+    /**
+     * The configuration service.
+     */
+    private final ConfigurationService configurationService;
+
+    /**
+     * The random service.
+     */
+    private final RandomService randomService;
+
+    /**
+     * Animation frames by crate identifier.
+     */
+    private final Map<String, AnimationFrames> animationFrames = new HashMap<>();
+
+    /**
+     * Sessions by player.
+     */
+    private final Map<UUID, Session> sessions = new HashMap<>();
+
+    /**
+     * Sessions in the order they're next advanced.
+     */
+    private final Deque<Session> active = new ArrayDeque<>();
+
+    /**
+     * The current tick.
+     */
+    private long tick = 0;
+
+    /**
+     * The tick task.
+     */
+    private BukkitTask tickTask;
+
+    /**
+     * Construct the animation service.
+     *
+     * @param configurationService The configuration service
+     * @param randomService The random service
+     */
+    @Inject
+    public AnimationService(ConfigurationService configurationService, RandomService randomService) {
+        this.configurationService = configurationService;
+        this.randomService = randomService;
+    }
+
+    /**
+     * Start advancing animations every tick.
+     */
+    public void start() {
+        tickTask = Bukkit.getScheduler().runTaskTimer(StellarCrates.getInstance(), this::tick, 1L, 1L);
+    }
+
+    /**
+     * Whether a player is watching an animation.
+     *
+     * @param player The player
+     * @return True if animating
+     */
+    public boolean animating(Player player) {
+        return sessions.containsKey(player.getUniqueId());
+    }
+
+    /**
+     * Play a crate's animation, landing on an already chosen reward.
+     *
+     * @param player The player
+     * @param crate The crate
+     * @param reward The reward
+     * @param onReveal Run once when the reward is revealed, or the player closes the animation
+     */
+    public void play(Player player, ICrate crate, IReward reward, Runnable onReveal) {
+        AnimationFrames frames = animationFrames(crate);
+        Gui gui = frames.borrow();
+
+        Session session = new Session(
+            player, gui, frames, frames.start(reward, randomService.random()), tick, onReveal);
+        sessions.put(player.getUniqueId(), session);
+        active.add(session);
+
+        gui.open(player);
+        session.position = frames.position(session.spin.start(), 0);
+        frames.render(gui, session.position, session.spin);
+    }
+
+    /**
+     * Get a crate's animation frames, built the first time or after its rewards or weights change.
+     *
+     * @param crate The crate
+     * @return The animation frames
+     */
+    private AnimationFrames animationFrames(ICrate crate) {
+        AnimationFrames frames = animationFrames.get(crate.config().identifier());
+        if (frames == null || !frames.current(crate)) {
+            frames = new AnimationFrames(crate, this::closed);
+            animationFrames.put(crate.config().identifier(), frames);
+        }
+
+        return frames;
+    }
+
+    /**
+     * Advance sessions, at most the configured number per tick.
+     */
+    private void tick() {
+        tick++;
+
+        int limit = Math.max(1, configurationService.stellarCratesConfig().animationSessionsPerTick());
+        int count = Math.min(limit, active.size());
+        for (int i = 0; i < count; i++) {
+            Session session = active.poll();
+            if (!session.ended && advance(session)) {
+                active.add(session);
+            }
+        }
+    }
+
+    /**
+     * Advance a session to the current tick.
+     *
+     * @param session The session
+     * @return True if the session is still running
+     */
+    private boolean advance(Session session) {
+        AnimationFrames frames = session.frames;
+        long elapsed = tick - session.startTick;
+
+        if (elapsed < frames.duration()) {
+            int position = frames.position(session.spin.start(), (int) elapsed);
+            if (position != session.position) {
+                session.position = position;
+                frames.render(session.gui, position, session.spin);
+                session.player.playSound(session.player.getLocation(), Sound.UI_BUTTON_CLICK, 0.3f, 1.8f);
+            }
+
+            return true;
+        }
+
+        if (!session.revealed) {
+            session.position = frames.position(session.spin.start(), frames.duration());
+            frames.render(session.gui, session.position, session.spin);
+            reveal(session);
+
+            return true;
+        }
+
+        if (elapsed < frames.duration() + HOLD_TICKS) {
+            return true;
+        }
+
+        end(session);
+
+        return false;
+    }
+
+    /**
+     * Reveal a session's reward, once.
+     *
+     * @param session The session
+     */
+    private void reveal(Session session) {
+        if (!session.revealed) {
+            session.revealed = true;
+            session.onReveal.run();
+        }
+    }
+
+    /**
+     * End a session and close its gui.
+     *
+     * @param session The session
+     */
+    private void end(Session session) {
+        sessions.remove(session.player.getUniqueId(), session);
+        session.ended = true;
+        reveal(session);
+
+        session.gui.close(session.player);
+        session.frames.recycle(session.gui);
+    }
+
+    /**
+     * Handle a player closing an animation gui, including when they log out.
+     *
+     * @param event The event
+     */
+    private void closed(InventoryCloseEvent event) {
+        Session session = sessions.remove(event.getPlayer().getUniqueId());
+        if (session == null) {
+            // Closed by end()
+            return;
+        }
+
+        session.ended = true;
+        reveal(session);
+        session.frames.recycle(session.gui);
+    }
+
+    /**
+     * End every session and reveal their rewards. Called when the plugin disables.
+     */
+    public void shutdown() {
+        if (tickTask != null) {
+            tickTask.cancel();
+        }
+
+        for (Session session : new ArrayList<>(sessions.values())) {
+            end(session);
+        }
+
+        active.clear();
+    }
+}
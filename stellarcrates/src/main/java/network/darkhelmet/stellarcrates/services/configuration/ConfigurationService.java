@@ -48,6 +48,15 @@ import org.spongepowered.configurate.loader.ConfigurationLoader;
 import xyz.xenondevs.particle.data.color.RegularColor;
 
 public class ConfigurationService {
+    /**
+     * A set of configurations read from disk.
+     *
+     * @param stellarCratesConfiguration The primary plugin configuration
+     * @param crateConfigurations The crate configurations
+     */
+    public record Configurations(
+        StellarCratesConfiguration stellarCratesConfiguration, List<CrateConfiguration> crateConfigurations) {}
+
     /**
      * The plugin data path.
      */
@@ -97,19 +106,45 @@ public class ConfigurationService {
      * Load the configurations.
      */
     public void loadConfigurations() {
+        applyConfigurations(readConfigurations());
+    }
+
+    /**
+     * Read the configuration files without applying them.
+     *
+     * <p>Does not modify this service, so it's safe to call off the main thread.</p>
+     *
+     * @return The configurations
+     */
+    public Configurations readConfigurations() {
         File configFile = new File(dataPath.toFile(), "stellarcrates.conf");
-        stellarCratesConfiguration = getOrWriteConfiguration(StellarCratesConfiguration.class, configFile);
+        StellarCratesConfiguration stellarCratesConfig =
+            getOrWriteConfiguration(StellarCratesConfiguration.class, configFile);
 
         File cratesConfigDir = new File(dataPath.toFile(), "crates");
         if (!cratesConfigDir.exists()) {
             cratesConfigDir.mkdirs();
         }
 
-        crateConfigurations.clear();
+        List<CrateConfiguration> crateConfigs = new ArrayList<>();
         for (File crateFile : cratesConfigDir.listFiles()) {
             CrateConfiguration crateConfiguration = getOrWriteConfiguration(CrateConfiguration.class, crateFile);
-            crateConfigurations.add(crateConfiguration);
+            crateConfigs.add(crateConfiguration);
         }
+
+        return new Configurations(stellarCratesConfig, crateConfigs);
+    }
+
+    /**
+     * Apply configurations previously read with readConfigurations.
+     *
+     * @param configurations The configurations
+     */
+    public void applyConfigurations(Configurations configurations) {
+        stellarCratesConfiguration = configurations.stellarCratesConfiguration();
+
+        crateConfigurations.clear();
+        crateConfigurations.addAll(configurations.crateConfigurations());
     }
 
     /**
@@ -0,0 +1,197 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.crates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import me.clip.placeholderapi.PlaceholderAPI;
+
+import org.bukkit.entity.Player;
+
+/**
+ * A reward command compiled into segments, so rendering is a single string build.
+ *
+ * <p>`%player_name%`, `%player_uuid%` and `%crate_id%` are resolved directly.
+ * Any other `%token%` is handed to PlaceholderAPI on its own,
+ * and commands without tokens are never passed to PlaceholderAPI at all.</p>
+ */
+public final class CommandTemplate {
+    /**
+     * Segment kinds.
+     */
+    private enum Kind {
+        LITERAL, PLAYER_NAME, PLAYER_UUID, CRATE_ID, PLACEHOLDER
+    }
+
+    /**
+     * A segment of the command.
+     *
+     * @param kind The kind
+     * @param value The literal text, or the full token for placeholders
+     */
+    private record Segment(Kind kind, String value) {}
+
+    /**
+     * The segments.
+     */
+    private final Segment[] segments;
+
+    /**
+     * The literal length, used to size the builder.
+     */
+    private final int literalLength;
+
+    /**
+     * The source command.
+     */
+    private final String source;
+
+    /**
+     * Construct a command template.
+     *
+     * @param source The source command
+     * @param segments The segments
+     */
+    private CommandTemplate(String source, List<Segment> segments) {
+        this.source = source;
+        this.segments = segments.toArray(new Segment[0]);
+
+        int length = 0;
+        for (Segment segment : segments) {
+            if (segment.kind() == Kind.LITERAL) {
+                length += segment.value().length();
+            }
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Compile a command.
+     *
+     * <p>Tokens are `%identifier_params%`, like PlaceholderAPI expects. Text between
+     * two `%` that has no `_` or contains whitespace is left as is.</p>
+     *
+     * @param command The command
+     * @return The template
+     */
+    public static CommandTemplate compile(String command) {
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+
+        int i = 0;
+        while (i < command.length()) {
+            int open = command.indexOf('%', i);
+            int close = open < 0 ? -1 : command.indexOf('%', open + 1);
+            if (close < 0) {
+                literal.append(command, i, command.length());
+                break;
+            } else if (!isToken(command, open + 1, close)) {
+                // Not a token, keep the first % and retry from the next
+                literal.append(command, i, open + 1);
+                i = open + 1;
+                continue;
+            }
+
+            literal.append(command, i, open);
+
+            String token = command.substring(open, close + 1);
+            Kind kind = switch (token) {
+                case "%player_name%" -> Kind.PLAYER_NAME;
+                case "%player_uuid%" -> Kind.PLAYER_UUID;
+                case "%crate_id%" -> Kind.CRATE_ID;
+                default -> Kind.PLACEHOLDER;
+            };
+
+            if (literal.length() > 0) {
+                segments.add(new Segment(Kind.LITERAL, literal.toString()));
+                literal.setLength(0);
+            }
+
+            segments.add(new Segment(kind, token));
+            i = close + 1;
+        }
+
+        if (literal.length() > 0) {
+            segments.add(new Segment(Kind.LITERAL, literal.toString()));
+        }
+
+        return new CommandTemplate(command, segments);
+    }
+
+    /**
+     * Check whether the text between two `%` can be a placeholder.
+     *
+     * @param command The command
+     * @param start The first character after the opening `%`
+     * @param end The closing `%`
+     * @return True if a placeholder token
+     */
+    private static boolean isToken(String command, int start, int end) {
+        boolean underscore = false;
+        for (int i = start; i < end; i++) {
+            char c = command.charAt(i);
+            if (Character.isWhitespace(c)) {
+                return false;
+            }
+
+            underscore |= c == '_';
+        }
+
+        return underscore && command.charAt(start) != '_';
+    }
+
+    /**
+     * Render the command for a player.
+     *
+     * @param player The player
+     * @param crateId The crate identifier
+     * @return The command
+     */
+    public String render(Player player, String crateId) {
+        if (segments.length == 1 && segments[0].kind() == Kind.LITERAL) {
+            return segments[0].value();
+        }
+
+        StringBuilder builder = new StringBuilder(literalLength + 16 * segments.length);
+        for (Segment segment : segments) {
+            switch (segment.kind()) {
+                case LITERAL -> builder.append(segment.value());
+                case PLAYER_NAME -> builder.append(player.getName());
+                case PLAYER_UUID -> builder.append(player.getUniqueId());
+                case CRATE_ID -> builder.append(crateId);
+                case PLACEHOLDER -> builder.append(PlaceholderAPI.setPlaceholders(player, segment.value()));
+                default -> throw new IllegalStateException("Unknown segment kind: " + segment.kind());
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Get the source command.
+     *
+     * @return The source command
+     */
+    public String source() {
+        return source;
+    }
+}
@@ -21,20 +21,30 @@
 package network.darkhelmet.stellarcrates.services.crates;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.random.RandomGenerator;
 
 import network.darkhelmet.stellarcrates.StellarCrates;
 import network.darkhelmet.stellarcrates.api.services.configuration.CrateConfiguration;
 import network.darkhelmet.stellarcrates.api.services.configuration.KeyConfiguration;
+import network.darkhelmet.stellarcrates.api.services.configuration.KeyMatchMode;
 import network.darkhelmet.stellarcrates.api.services.configuration.RewardConfiguration;
+import network.darkhelmet.stellarcrates.api.services.configuration.RewardSamplerMode;
 import network.darkhelmet.stellarcrates.api.services.crates.ICrate;
 import network.darkhelmet.stellarcrates.api.services.crates.ICrateInstance;
 import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+import network.darkhelmet.stellarcrates.services.crates.samplers.AliasRewardSampler;
+import network.darkhelmet.stellarcrates.services.crates.samplers.FenwickRewardSampler;
+import network.darkhelmet.stellarcrates.services.crates.samplers.RewardSampler;
+import network.darkhelmet.stellarcrates.services.random.RandomService;
 import network.darkhelmet.stellarcrates.utils.NamespacedKeys;
+import network.darkhelmet.stellarcrates.utils.RandomUtil;
 
 import org.bukkit.Location;
 import org.bukkit.inventory.ItemStack;
@@ -47,34 +57,84 @@ public final class Crate implements ICrate {
      */
     private final CrateConfiguration config;
 
+    /**
+     * The crate instance registry.
+     */
+    private final CrateInstanceRegistry crateInstanceRegistry;
+
+    /**
+     * How held items are matched against the key.
+     */
+    private final KeyMatchMode keyMatchMode;
+
+    /**
+     * The random service.
+     */
+    private final RandomService randomService;
+
+    /**
+     * The key fingerprint, rebuilt whenever the key changes.
+     */
+    private volatile KeyFingerprint keyFingerprint;
+
     /**
      * The rewards.
      */
     private final List<IReward> rewards = new ArrayList<>();
 
     /**
-     * A map of crate instances.
+     * The reward sampler, rebuilt whenever rewards change. Null when there are no rewards.
+     */
+    private volatile RewardSampler rewardSampler;
+
+    /**
+     * The index of each reward in the rewards list.
+     */
+    private final Map<IReward, Integer> rewardIndexes = new HashMap<>();
+
+    /**
+     * A read-only snapshot of crate instances, replaced on every change.
      */
-    private final Map<Location, ICrateInstance> crateInstances = new HashMap<>();
+    private volatile Map<Location, ICrateInstance> crateInstances = Map.of();
 
     /**
      * Construct a new crate.
      *
+     * <p>Instances are created but not registered, nothing here touches the world
+     * so crates can be built off the main thread. The crate service registers them.</p>
+     *
      * @param config The crate configuration
+     * @param crateInstanceRegistry The crate instance registry
+     * @param keyMatchMode The key match mode
+     * @param randomService The random service
      */
-    public Crate(CrateConfiguration config) {
+    public Crate(
+            CrateConfiguration config,
+            CrateInstanceRegistry crateInstanceRegistry,
+            KeyMatchMode keyMatchMode,
+            RandomService randomService) {
         this.config = config;
+        this.crateInstanceRegistry = crateInstanceRegistry;
+        this.keyMatchMode = keyMatchMode;
+        this.randomService = randomService;
+
+        if (config.key() != null) {
+            keyFingerprint = new KeyFingerprint(config.key().toItemStack());
+        }
 
         config.rewards().forEach(rewardConfiguration -> {
             rewards.add(new Reward(rewardConfiguration, rewardConfiguration.toItemStack()));
         });
+        rebuildRewardSampler();
 
+        Map<Location, ICrateInstance> instances = new HashMap<>();
         config.locations().forEach(loc -> {
-            createCrateInstance(loc);
+            instances.put(loc, new CrateInstance(this, loc));
 
             String msg = String.format("Placing crate `%s` at %s", config.identifier(), loc.toString());
             StellarCrates.getInstance().debug(msg);
         });
+        crateInstances = Collections.unmodifiableMap(instances);
     }
 
     @Override
@@ -91,6 +151,7 @@ public final class Crate implements ICrate {
 
         IReward reward = new Reward(rewardConfiguration, rewardConfiguration.toItemStack());
         rewards.add(reward);
+        rebuildRewardSampler();
 
         return reward;
     }
@@ -147,6 +208,7 @@ public final class Crate implements ICrate {
         KeyConfiguration keyConfiguration = new KeyConfiguration(itemStack);
 
         config.key(keyConfiguration);
+        keyFingerprint = new KeyFingerprint(keyConfiguration.toItemStack());
 
         return itemStack;
     }
@@ -159,7 +221,14 @@ public final class Crate implements ICrate {
      */
     private ICrateInstance createCrateInstance(Location location) {
         ICrateInstance crateInstance = new CrateInstance(this, location);
-        crateInstances.put(location, crateInstance);
+
+        synchronized (this) {
+            Map<Location, ICrateInstance> copy = new HashMap<>(crateInstances);
+            copy.put(location, crateInstance);
+            crateInstances = Collections.unmodifiableMap(copy);
+        }
+
+        crateInstanceRegistry.register(crateInstance);
 
         return crateInstance;
     }
@@ -169,8 +238,14 @@ public final class Crate implements ICrate {
         Optional<ICrateInstance> crateInstanceOptional = crateInstance(location);
         if (crateInstanceOptional.isPresent()) {
             crateInstanceOptional.get().unload();
+            crateInstanceRegistry.unregister(crateInstanceOptional.get());
+
+            synchronized (this) {
+                Map<Location, ICrateInstance> copy = new HashMap<>(crateInstances);
+                copy.remove(location);
+                crateInstances = Collections.unmodifiableMap(copy);
+            }
 
-            crateInstances().remove(location);
             config().locations().remove(location);
         }
 
@@ -184,29 +259,145 @@ public final class Crate implements ICrate {
 
     @Override
     public boolean keyMatches(ItemStack itemStack) {
-        return config.key() == null || config.key().toItemStack().isSimilar(itemStack);
+        KeyFingerprint fingerprint = keyFingerprint;
+
+        return fingerprint == null || fingerprint.matches(itemStack, keyMatchMode);
     }
 
     @Override
     public Optional<IReward> randomReward() {
-        if (rewards.isEmpty()) {
+        RewardSampler sampler = rewardSampler;
+        if (sampler == null) {
             return Optional.empty();
         }
 
-        double totalWeight = 0.0;
-        for (IReward reward : rewards) {
-            totalWeight += reward.config().weight();
+        return Optional.of(sampler.sample(randomService.random(config)));
+    }
+
+    @Override
+    public Map<IReward, Integer> randomRewards(int count) {
+        RewardSampler sampler = rewardSampler;
+        if (sampler == null || count <= 0) {
+            return Map.of();
+        }
+
+        RandomGenerator random = randomService.random(config);
+        List<IReward> sampled = sampler.rewards();
+        int[] counts = new int[sampled.size()];
+
+        if (count <= sampled.size()) {
+            // Few draws, sampling each one is cheaper
+            for (int i = 0; i < count; i++) {
+                counts[sampler.sampleIndex(random)]++;
+            }
+        } else {
+            // Multinomial as a chain of conditional binomials
+            double remainingWeight = 0;
+            for (int i = 0; i < counts.length; i++) {
+                remainingWeight += sampler.weight(i);
+            }
+
+            int remaining = count;
+            for (int i = 0; i < counts.length && remaining > 0; i++) {
+                double weight = sampler.weight(i);
+                if (i == counts.length - 1 || weight >= remainingWeight) {
+                    counts[i] = remaining;
+                    break;
+                }
+
+                counts[i] = RandomUtil.binomial(random, remaining, weight / remainingWeight);
+                remaining -= counts[i];
+                remainingWeight -= weight;
+            }
         }
 
-        int idx = 0;
-        for (double r = Math.random() * totalWeight; idx < rewards.size() - 1; ++idx) {
-            r -= rewards.get(idx).config().weight();
-            if (r <= 0.0) {
-                break;
+        Map<IReward, Integer> results = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                results.put(sampled.get(i), counts[i]);
             }
         }
 
-        return Optional.of(rewards.get(idx));
+        return results;
+    }
+
+    @Override
+    public synchronized double rewardWeight(IReward reward) {
+        RewardSampler sampler = rewardSampler;
+        Integer index = rewardIndexes.get(reward);
+        if (sampler == null || index == null || index >= sampler.rewards().size()) {
+            return reward.config().weight();
+        }
+
+        return sampler.weight(index);
+    }
+
+    @Override
+    public synchronized void rewardWeight(IReward reward, double weight) {
+        Integer index = rewardIndexes.get(reward);
+        if (index == null || rewardSampler == null) {
+            throw new IllegalArgumentException("Reward does not belong to this crate.");
+        }
+
+        rewardSampler = rewardSampler.updateWeight(index, weight);
+    }
+
+    /**
+     * Rebuild the reward sampler from the current rewards, keeping any runtime weights.
+     */
+    private synchronized void rebuildRewardSampler() {
+        if (rewards.isEmpty()) {
+            rewardSampler = null;
+            return;
+        }
+
+        RewardSampler previous = rewardSampler;
+        double[] weights = new double[rewards.size()];
+        for (int i = 0; i < weights.length; i++) {
+            IReward reward = rewards.get(i);
+            rewardIndexes.put(reward, i);
+
+            if (previous != null && i < previous.rewards().size()) {
+                weights[i] = previous.weight(i);
+            } else {
+                weights[i] = reward.config().weight();
+            }
+        }
+
+        if (config.rewardSampler() == RewardSamplerMode.FENWICK) {
+            rewardSampler = new FenwickRewardSampler(rewards, weights);
+        } else {
+            rewardSampler = new AliasRewardSampler(rewards, weights);
+        }
+    }
+
+    /**
+     * Get the reward sampler.
+     *
+     * @return The reward sampler, or null if there are no rewards
+     */
+    public RewardSampler rewardSampler() {
+        return rewardSampler;
+    }
+
+    /**
+     * Get the random service.
+     *
+     * @return The random service
+     */
+    public RandomService randomService() {
+        return randomService;
+    }
+
+    @Override
+    public Optional<IReward> reward(String identifier) {
+        for (IReward reward : rewards) {
+            if (reward.config().identifier().equals(identifier)) {
+                return Optional.of(reward);
+            }
+        }
+
+        return Optional.empty();
     }
 
     @Override
@@ -216,8 +407,16 @@ public final class Crate implements ICrate {
 
     @Override
     public void unloadInstances() {
-        crateInstances.values().forEach(ICrateInstance::unload);
-        crateInstances.clear();
+        Map<Location, ICrateInstance> previous;
+        synchronized (this) {
+            previous = crateInstances;
+            crateInstances = Map.of();
+        }
+
+        previous.values().forEach(crateInstance -> {
+            crateInstance.unload();
+            crateInstanceRegistry.unregister(crateInstance);
+        });
     }
 
     /**
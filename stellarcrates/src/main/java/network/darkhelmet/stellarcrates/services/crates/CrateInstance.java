@@ -22,22 +22,21 @@ package network.darkhelmet.stellarcrates.services.crates;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
 
 import network.darkhelmet.stellarcrates.api.services.configuration.HologramConfiguration;
-import network.darkhelmet.stellarcrates.api.services.configuration.ParticleColorMode;
+import network.darkhelmet.stellarcrates.api.services.configuration.ParticleConfiguration;
 import network.darkhelmet.stellarcrates.api.services.crates.ICrateInstance;
 import network.darkhelmet.stellarcrates.api.services.holograms.CrateHologram;
 import network.darkhelmet.stellarcrates.api.services.holograms.HologramProvider;
 import network.darkhelmet.stellarcrates.services.holograms.providers.DecentHologramsProvider;
-import network.darkhelmet.stellarcrates.utils.RandomUtil;
+import network.darkhelmet.stellarcrates.services.particles.ParticleOutbox;
+import network.darkhelmet.stellarcrates.services.particles.ParticlePlan;
+import network.darkhelmet.stellarcrates.services.players.PlayerIndex;
 
 import org.bukkit.Location;
-
-import xyz.xenondevs.particle.ParticleBuilder;
-import xyz.xenondevs.particle.ParticleEffect;
-import xyz.xenondevs.particle.PropertyType;
-import xyz.xenondevs.particle.data.color.RegularColor;
-import xyz.xenondevs.particle.task.TaskManager;
+import org.bukkit.World;
 
 public class CrateInstance implements ICrateInstance {
     /**
@@ -64,20 +63,78 @@ public class CrateInstance implements ICrateInstance {
     private final Location instanceLocation;
 
     /**
-     * Particle task IDs.
+     * The compiled particle configurations.
+     */
+    private final ParticlePlan[] particlePlans;
+
+    /**
+     * The largest particle visibility range.
+     */
+    private final double maxVisibilityRange;
+
+    /**
+     * Ticks between particle emissions.
+     */
+    private final int particleInterval;
+
+    /**
+     * A random offset into the particle interval, so instances don't all emit on the same tick.
+     */
+    private final int particlePhase;
+
+    /**
+     * The crate priority, deciding whose particles players see when over budget.
+     */
+    private final int priority;
+
+    /**
+     * A hash of the world and chunk region this instance is in.
+     */
+    private final int region;
+
+    /**
+     * Players near this instance, reused every tick.
      */
-    private final List<Integer> particleTaskIds = new ArrayList<>();
+    private final PlayerIndex.Nearby nearby = new PlayerIndex.Nearby();
+
+    /**
+     * Whether this instance is loaded into the world.
+     */
+    private volatile boolean loaded = false;
 
     /**
      * Construct a new crate instance.
      *
      * @param crate The crate
+     * @param instanceLocation The location
      */
     public CrateInstance(Crate crate, Location instanceLocation) {
         this.crate = crate;
         this.instanceLocation = instanceLocation;
 
-        createHologram();
+        RandomGenerator random = crate.randomService().random();
+        List<ParticlePlan> plans = new ArrayList<>();
+        double visibilityRange = 0;
+        for (ParticleConfiguration particleConfiguration : crate.config().particles()) {
+            if (particleConfiguration.effect() == null) {
+                continue;
+            }
+
+            plans.add(new ParticlePlan(particleConfiguration, instanceLocation, random));
+            visibilityRange = Math.max(visibilityRange, particleConfiguration.visibilityRange());
+        }
+
+        this.particlePlans = plans.toArray(new ParticlePlan[0]);
+        this.maxVisibilityRange = visibilityRange;
+        this.particleInterval = Math.max(1, crate.config().particleInterval());
+        this.particlePhase = random.nextInt(1 << 16);
+        this.priority = crate.config().priority();
+
+        // Regions are 8 by 8 chunks
+        int regionX = instanceLocation.getBlockX() >> 7;
+        int regionZ = instanceLocation.getBlockZ() >> 7;
+        int worldHash = instanceLocation.getWorld() != null ? instanceLocation.getWorld().getUID().hashCode() : 0;
+        this.region = (worldHash * 31 + regionX) * 31 + regionZ;
     }
 
     @Override
@@ -94,7 +151,7 @@ public class CrateInstance implements ICrateInstance {
             return;
         }
 
-        List<String> lines = hologramConfiguration.lines();
+        List<String> lines = new ArrayList<>(hologramConfiguration.lines());
         if (lines.isEmpty()) {
             lines.add(crate.config().title());
         }
@@ -112,6 +169,42 @@ public class CrateInstance implements ICrateInstance {
         holograms.add(hologramProvider.create(identifier, hologramLocation, lines));
     }
 
+    /**
+     * Take over the holograms of the instance this one replaces, if they would be identical.
+     *
+     * <p>Used during reloads so unchanged crates don't destroy and recreate their holograms.</p>
+     *
+     * @param previous The previous instance at the same location
+     */
+    public void adoptHolograms(CrateInstance previous) {
+        if (!previous.loaded || loaded
+                || !Objects.equals(previous.crate.config().hologram(), crate.config().hologram())
+                || !Objects.equals(previous.crate.config().title(), crate.config().title())) {
+            return;
+        }
+
+        holograms.addAll(previous.holograms);
+        previous.holograms.clear();
+
+        loaded = true;
+    }
+
+    @Override
+    public void load() {
+        if (loaded) {
+            return;
+        }
+
+        createHologram();
+
+        loaded = true;
+    }
+
+    @Override
+    public boolean loaded() {
+        return loaded;
+    }
+
     @Override
     public Location location() {
         return instanceLocation;
@@ -119,67 +212,88 @@ public class CrateInstance implements ICrateInstance {
 
     @Override
     public void unload() {
+        loaded = false;
+
         holograms.forEach(CrateHologram::destroy);
         holograms.clear();
-        particleTaskIds.forEach(id -> TaskManager.getTaskManager().stopTask(id));
-        particleTaskIds.clear();
+    }
+
+    /**
+     * Get a hash of the world and chunk region this instance is in.
+     *
+     * @return The region hash
+     */
+    public int region() {
+        return region;
     }
 
     /**
      * Tick this crate instance.
+     *
+     * @param players The player index snapshot for this tick
+     * @param tick The tick number
+     * @param particleScale The share of configured particle emission the server can afford
+     * @param outbox Where to queue particle packets
+     * @param random The calling worker's random generator
      */
-    public void tick() {
-        tickParticles();
+    public void tick(PlayerIndex.Snapshot players, long tick, double particleScale, ParticleOutbox outbox,
+            RandomGenerator random) {
+        tickParticles(players, tick, particleScale, outbox, random);
     }
 
     /**
-     * Play particles.
+     * Queue particles for nearby players only.
+     *
+     * <p>Under load the interval is stretched and amounts shrink by the same scale.</p>
+     *
+     * @param players The player index snapshot for this tick
+     * @param tick The tick number
+     * @param particleScale The share of configured particle emission the server can afford
+     * @param outbox Where to queue particle packets
+     * @param random The calling worker's random generator
      */
-    private void tickParticles() {
-        crate.config().particles().forEach(particleConfiguration -> {
-            // Start at the center of the block
-            Location location = instanceLocation.clone().add(0.5, 0.5, 0.5);
-            location.add(particleConfiguration.positionOffset());
+    private void tickParticles(PlayerIndex.Snapshot players, long tick, double particleScale, ParticleOutbox outbox,
+            RandomGenerator random) {
+        World world = instanceLocation.getWorld();
+        if (particlePlans.length == 0 || world == null || particleScale <= 0) {
+            return;
+        }
 
-            double x = location.getX();
-            double y = location.getY();
-            double z = location.getZ();
+        long interval = particleScale >= 1 ? particleInterval : (long) Math.ceil(particleInterval / particleScale);
+        if ((tick + particlePhase) % interval != 0) {
+            return;
+        }
 
-            // Range
-            double xr = particleConfiguration.particleRange().getX();
-            double yr = particleConfiguration.particleRange().getY();
-            double zr = particleConfiguration.particleRange().getZ();
-            if (xr + yr + zr != 0) {
-                x = RandomUtil.randomInRange(x - xr, x + xr);
-                y = RandomUtil.randomInRange(y - yr, y + yr);
-                z = RandomUtil.randomInRange(z - zr, z + zr);
-            }
-            Location spawnLoc = new Location(instanceLocation.getWorld(), x, y, z);
-
-            ParticleEffect effect = particleConfiguration.effect();
-            ParticleBuilder particle = new ParticleBuilder(effect, spawnLoc);
-
-            // Colors
-            if (effect.hasProperty(PropertyType.COLORABLE)) {
-                RegularColor color = null;
-
-                if (particleConfiguration.colorMode().equals(ParticleColorMode.STATIC)) {
-                    color = particleConfiguration.color();
-                } else {
-                    int r = RandomUtil.random.nextInt(255);
-                    int b = RandomUtil.random.nextInt(255);
-                    int g = RandomUtil.random.nextInt(255);
-                    color = new RegularColor(r, g, b);
+        // One index query covers every particle plan
+        players.nearby(world.getUID(), instanceLocation.getX() + 0.5, instanceLocation.getY() + 0.5,
+            instanceLocation.getZ() + 0.5, maxVisibilityRange, nearby);
+        if (nearby.size() == 0) {
+            return;
+        }
+
+        for (ParticlePlan particlePlan : particlePlans) {
+            particlePlan.begin();
+
+            for (int i = 0; i < nearby.size(); i++) {
+                double distanceSquared = nearby.distanceSquared(i);
+                if (distanceSquared > particlePlan.visibilityRangeSquared()) {
+                    continue;
                 }
 
-                particle.setParticleData(color);
-            }
+                // Further receivers see fewer emissions with fewer particles
+                int level = particlePlan.level(distanceSquared);
+                if (!particlePlan.emits(level)) {
+                    continue;
+                }
 
-            // Amount
-            particle.setAmount(particleConfiguration.amount());
+                // Packets are only built once someone will receive them, one per shape point
+                for (int point = 0; point < particlePlan.points(); point++) {
+                    Object packet = particlePlan.packet(level, point, random, particleScale);
+                    outbox.add(nearby.player(i), packet, particlePlan.amount(level), priority);
+                }
+            }
+        }
 
-            particle.display(player ->
-                player.getLocation().distanceSquared(instanceLocation) < particleConfiguration.visibilityRange());
-        });
+        nearby.clear();
     }
 }
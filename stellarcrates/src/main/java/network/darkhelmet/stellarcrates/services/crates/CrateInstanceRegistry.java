@@ -0,0 +1,426 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.crates;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import network.darkhelmet.stellarcrates.api.services.crates.ICrateInstance;
+import network.darkhelmet.stellarcrates.utils.LongObjectMap;
+import network.darkhelmet.stellarcrates.utils.PositionUtil;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+/**
+ * Indexes crate instances by block and chunk position.
+ *
+ * <p>State is published as an immutable snapshot which writers replace (copy-on-write)
+ * so readers on any thread, like the async tick, never need a lock.</p>
+ *
+ * <p>Instances in chunks near players are also tracked as active. Only active instances are ticked.</p>
+ */
+public class CrateInstanceRegistry {
+    /**
+     * An immutable view of the registry.
+     *
+     * @param instancesByBlock Crate instances indexed by world and packed block position
+     * @param instancesByChunk Crate instances bucketed by world and packed chunk position
+     * @param loadedInstances Crate instances whose chunks are currently loaded
+     * @param activeInstances Crate instances in chunks near a player
+     */
+    private record Snapshot(
+        Map<UUID, LongObjectMap<ICrateInstance>> instancesByBlock,
+        Map<UUID, LongObjectMap<List<ICrateInstance>>> instancesByChunk,
+        Set<ICrateInstance> loadedInstances,
+        Set<ICrateInstance> activeInstances) {}
+
+    /**
+     * The empty snapshot.
+     */
+    private static final Snapshot EMPTY = new Snapshot(Map.of(), Map.of(), Set.of(), Set.of());
+
+    /**
+     * The current snapshot. Never mutated once published.
+     */
+    private volatile Snapshot snapshot = EMPTY;
+
+    /**
+     * Chunks near a player, by world. Guarded by this registry, never published.
+     */
+    private final Map<UUID, LongObjectMap<Boolean>> activeChunks = new HashMap<>();
+
+    /**
+     * Get the crate instance at the given block coordinates.
+     *
+     * @param world The world
+     * @param x The block x
+     * @param y The block y
+     * @param z The block z
+     * @return The crate instance, or null
+     */
+    public ICrateInstance get(World world, int x, int y, int z) {
+        LongObjectMap<ICrateInstance> instances = snapshot.instancesByBlock().get(world.getUID());
+        if (instances == null) {
+            return null;
+        }
+
+        return instances.get(PositionUtil.blockKey(x, y, z));
+    }
+
+    /**
+     * Get all crate instances in loaded chunks.
+     *
+     * @return The loaded crate instances
+     */
+    public Collection<ICrateInstance> loadedInstances() {
+        return snapshot.loadedInstances();
+    }
+
+    /**
+     * Get all crate instances in chunks near a player.
+     *
+     * @return The active crate instances
+     */
+    public Collection<ICrateInstance> activeInstances() {
+        return snapshot.activeInstances();
+    }
+
+    /**
+     * Index a crate instance. Loads it immediately if its chunk is loaded.
+     *
+     * @param crateInstance The crate instance
+     */
+    public synchronized void register(ICrateInstance crateInstance) {
+        Snapshot current = snapshot;
+        Location location = crateInstance.location();
+        World world = location.getWorld();
+        UUID worldId = world.getUID();
+        int chunkX = location.getBlockX() >> 4;
+        int chunkZ = location.getBlockZ() >> 4;
+
+        // Block index
+        Map<UUID, LongObjectMap<ICrateInstance>> instancesByBlock = new HashMap<>(current.instancesByBlock());
+        LongObjectMap<ICrateInstance> blocks = instancesByBlock.get(worldId);
+        blocks = blocks == null ? new LongObjectMap<>() : new LongObjectMap<>(blocks);
+        blocks.put(PositionUtil.blockKey(location.getBlockX(), location.getBlockY(), location.getBlockZ()),
+            crateInstance);
+        instancesByBlock.put(worldId, blocks);
+
+        // Chunk buckets
+        Map<UUID, LongObjectMap<List<ICrateInstance>>> instancesByChunk = new HashMap<>(current.instancesByChunk());
+        LongObjectMap<List<ICrateInstance>> chunks = instancesByChunk.get(worldId);
+        chunks = chunks == null ? new LongObjectMap<>() : new LongObjectMap<>(chunks);
+        long chunkKey = PositionUtil.chunkKey(chunkX, chunkZ);
+        List<ICrateInstance> bucket = chunks.get(chunkKey);
+        bucket = bucket == null ? new ArrayList<>() : new ArrayList<>(bucket);
+        bucket.add(crateInstance);
+        chunks.put(chunkKey, Collections.unmodifiableList(bucket));
+        instancesByChunk.put(worldId, chunks);
+
+        Set<ICrateInstance> loadedInstances = current.loadedInstances();
+        if (world.isChunkLoaded(chunkX, chunkZ)) {
+            crateInstance.load();
+
+            loadedInstances = with(loadedInstances, List.of(crateInstance));
+        }
+
+        Set<ICrateInstance> activeInstances = current.activeInstances();
+        if (isActive(worldId, chunkKey)) {
+            activeInstances = with(activeInstances, List.of(crateInstance));
+        }
+
+        snapshot = new Snapshot(Collections.unmodifiableMap(instancesByBlock),
+            Collections.unmodifiableMap(instancesByChunk), loadedInstances, activeInstances);
+    }
+
+    /**
+     * Replace the entire index with a new set of crate instances, loading any in loaded chunks.
+     *
+     * <p>Builds a single snapshot rather than copying once per instance.</p>
+     *
+     * @param crateInstances The crate instances
+     */
+    public synchronized void replaceAll(Collection<ICrateInstance> crateInstances) {
+        Map<UUID, LongObjectMap<ICrateInstance>> instancesByBlock = new HashMap<>();
+        Map<UUID, LongObjectMap<List<ICrateInstance>>> instancesByChunk = new HashMap<>();
+        Set<ICrateInstance> loadedInstances = new HashSet<>();
+        Set<ICrateInstance> activeInstances = new HashSet<>();
+
+        for (ICrateInstance crateInstance : crateInstances) {
+            Location location = crateInstance.location();
+            World world = location.getWorld();
+            int chunkX = location.getBlockX() >> 4;
+            int chunkZ = location.getBlockZ() >> 4;
+
+            instancesByBlock.computeIfAbsent(world.getUID(), uuid -> new LongObjectMap<>())
+                .put(PositionUtil.blockKey(location.getBlockX(), location.getBlockY(), location.getBlockZ()),
+                    crateInstance);
+
+            LongObjectMap<List<ICrateInstance>> chunks =
+                instancesByChunk.computeIfAbsent(world.getUID(), uuid -> new LongObjectMap<>());
+            long chunkKey = PositionUtil.chunkKey(chunkX, chunkZ);
+            List<ICrateInstance> bucket = chunks.get(chunkKey);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                chunks.put(chunkKey, bucket);
+            }
+            bucket.add(crateInstance);
+
+            if (world.isChunkLoaded(chunkX, chunkZ)) {
+                crateInstance.load();
+                loadedInstances.add(crateInstance);
+            }
+
+            if (isActive(world.getUID(), chunkKey)) {
+                activeInstances.add(crateInstance);
+            }
+        }
+
+        snapshot = new Snapshot(Collections.unmodifiableMap(instancesByBlock),
+            Collections.unmodifiableMap(instancesByChunk), Collections.unmodifiableSet(loadedInstances),
+            Collections.unmodifiableSet(activeInstances));
+    }
+
+    /**
+     * Remove a crate instance from the index.
+     *
+     * @param crateInstance The crate instance
+     */
+    public synchronized void unregister(ICrateInstance crateInstance) {
+        Snapshot current = snapshot;
+        Location location = crateInstance.location();
+        UUID worldId = location.getWorld().getUID();
+
+        // Block index
+        Map<UUID, LongObjectMap<ICrateInstance>> instancesByBlock = current.instancesByBlock();
+        LongObjectMap<ICrateInstance> blocks = instancesByBlock.get(worldId);
+        long blockKey = PositionUtil.blockKey(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        if (blocks != null && blocks.get(blockKey) == crateInstance) {
+            instancesByBlock = new HashMap<>(instancesByBlock);
+            blocks = new LongObjectMap<>(blocks);
+            blocks.remove(blockKey);
+
+            if (blocks.isEmpty()) {
+                instancesByBlock.remove(worldId);
+            } else {
+                instancesByBlock.put(worldId, blocks);
+            }
+
+            instancesByBlock = Collections.unmodifiableMap(instancesByBlock);
+        }
+
+        // Chunk buckets
+        Map<UUID, LongObjectMap<List<ICrateInstance>>> instancesByChunk = current.instancesByChunk();
+        LongObjectMap<List<ICrateInstance>> chunks = instancesByChunk.get(worldId);
+        long chunkKey = PositionUtil.chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        if (chunks != null && chunks.containsKey(chunkKey)) {
+            instancesByChunk = new HashMap<>(instancesByChunk);
+            chunks = new LongObjectMap<>(chunks);
+
+            List<ICrateInstance> bucket = new ArrayList<>(chunks.get(chunkKey));
+            bucket.remove(crateInstance);
+            if (bucket.isEmpty()) {
+                chunks.remove(chunkKey);
+            } else {
+                chunks.put(chunkKey, Collections.unmodifiableList(bucket));
+            }
+
+            if (chunks.isEmpty()) {
+                instancesByChunk.remove(worldId);
+            } else {
+                instancesByChunk.put(worldId, chunks);
+            }
+
+            instancesByChunk = Collections.unmodifiableMap(instancesByChunk);
+        }
+
+        snapshot = new Snapshot(instancesByBlock, instancesByChunk,
+            without(current.loadedInstances(), List.of(crateInstance)),
+            without(current.activeInstances(), List.of(crateInstance)));
+    }
+
+    /**
+     * Load all crate instances in a chunk that just loaded.
+     *
+     * @param chunk The chunk
+     */
+    public synchronized void chunkLoaded(Chunk chunk) {
+        List<ICrateInstance> bucket = bucket(chunk);
+        if (bucket == null) {
+            return;
+        }
+
+        bucket.forEach(ICrateInstance::load);
+
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current.instancesByBlock(), current.instancesByChunk(),
+            with(current.loadedInstances(), bucket), current.activeInstances());
+    }
+
+    /**
+     * Unload all crate instances in a chunk that is unloading.
+     *
+     * @param chunk The chunk
+     */
+    public synchronized void chunkUnloaded(Chunk chunk) {
+        List<ICrateInstance> bucket = bucket(chunk);
+        if (bucket == null) {
+            return;
+        }
+
+        bucket.forEach(ICrateInstance::unload);
+
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current.instancesByBlock(), current.instancesByChunk(),
+            without(current.loadedInstances(), bucket), current.activeInstances());
+    }
+
+    /**
+     * Mark a chunk as near a player, activating any crate instances in it.
+     *
+     * @param worldId The world uuid
+     * @param chunkX The chunk x
+     * @param chunkZ The chunk z
+     */
+    public synchronized void activateChunk(UUID worldId, int chunkX, int chunkZ) {
+        long chunkKey = PositionUtil.chunkKey(chunkX, chunkZ);
+        activeChunks.computeIfAbsent(worldId, uuid -> new LongObjectMap<>()).put(chunkKey, Boolean.TRUE);
+
+        List<ICrateInstance> bucket = bucket(worldId, chunkKey);
+        if (bucket == null) {
+            return;
+        }
+
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current.instancesByBlock(), current.instancesByChunk(),
+            current.loadedInstances(), with(current.activeInstances(), bucket));
+    }
+
+    /**
+     * Mark a chunk as no longer near any player, deactivating any crate instances in it.
+     *
+     * @param worldId The world uuid
+     * @param chunkX The chunk x
+     * @param chunkZ The chunk z
+     */
+    public synchronized void deactivateChunk(UUID worldId, int chunkX, int chunkZ) {
+        long chunkKey = PositionUtil.chunkKey(chunkX, chunkZ);
+        LongObjectMap<Boolean> chunks = activeChunks.get(worldId);
+        if (chunks != null) {
+            chunks.remove(chunkKey);
+            if (chunks.isEmpty()) {
+                activeChunks.remove(worldId);
+            }
+        }
+
+        List<ICrateInstance> bucket = bucket(worldId, chunkKey);
+        if (bucket == null) {
+            return;
+        }
+
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current.instancesByBlock(), current.instancesByChunk(),
+            current.loadedInstances(), without(current.activeInstances(), bucket));
+    }
+
+    /**
+     * Whether a chunk is near a player.
+     *
+     * @param worldId The world uuid
+     * @param chunkKey The packed chunk position
+     * @return True if active
+     */
+    private boolean isActive(UUID worldId, long chunkKey) {
+        LongObjectMap<Boolean> chunks = activeChunks.get(worldId);
+
+        return chunks != null && chunks.containsKey(chunkKey);
+    }
+
+    /**
+     * Remove all crate instances from the index.
+     */
+    public synchronized void clear() {
+        snapshot = EMPTY;
+    }
+
+    /**
+     * Get the crate instances in a chunk.
+     *
+     * @param chunk The chunk
+     * @return The crate instances, or null
+     */
+    private List<ICrateInstance> bucket(Chunk chunk) {
+        return bucket(chunk.getWorld().getUID(), PositionUtil.chunkKey(chunk.getX(), chunk.getZ()));
+    }
+
+    /**
+     * Get the crate instances in a chunk.
+     *
+     * @param worldId The world uuid
+     * @param chunkKey The packed chunk position
+     * @return The crate instances, or null
+     */
+    private List<ICrateInstance> bucket(UUID worldId, long chunkKey) {
+        LongObjectMap<List<ICrateInstance>> chunks = snapshot.instancesByChunk().get(worldId);
+        if (chunks == null) {
+            return null;
+        }
+
+        return chunks.get(chunkKey);
+    }
+
+    /**
+     * Copy a set with additional entries.
+     *
+     * @param set The set
+     * @param additions The entries to add
+     * @return An unmodifiable copy
+     */
+    private static Set<ICrateInstance> with(Set<ICrateInstance> set, Collection<ICrateInstance> additions) {
+        Set<ICrateInstance> copy = new HashSet<>(set);
+        copy.addAll(additions);
+
+        return Collections.unmodifiableSet(copy);
+    }
+
+    /**
+     * Copy a set without some entries.
+     *
+     * @param set The set
+     * @param removals The entries to remove
+     * @return An unmodifiable copy
+     */
+    private static Set<ICrateInstance> without(Set<ICrateInstance> set, Collection<ICrateInstance> removals) {
+        Set<ICrateInstance> copy = new HashSet<>(set);
+        copy.removeAll(removals);
+
+        return Collections.unmodifiableSet(copy);
+    }
+}
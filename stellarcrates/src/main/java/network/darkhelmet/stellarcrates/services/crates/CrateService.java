@@ -22,32 +22,51 @@ package network.darkhelmet.stellarcrates.services.crates;
 
 import com.google.inject.Inject;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
-import me.clip.placeholderapi.PlaceholderAPI;
-
+import network.darkhelmet.stellarcrates.StellarCrates;
+import network.darkhelmet.stellarcrates.api.services.configuration.AnimationType;
 import network.darkhelmet.stellarcrates.api.services.configuration.CrateConfiguration;
 import network.darkhelmet.stellarcrates.api.services.configuration.KeyRejectionEffectsConfigutation;
-import network.darkhelmet.stellarcrates.api.services.configuration.SoundConfiguration;
 import network.darkhelmet.stellarcrates.api.services.crates.ICrate;
 import network.darkhelmet.stellarcrates.api.services.crates.ICrateInstance;
 import network.darkhelmet.stellarcrates.api.services.crates.ICrateService;
 import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+import network.darkhelmet.stellarcrates.services.animations.AnimationService;
 import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
+import network.darkhelmet.stellarcrates.services.crates.samplers.RewardSampler;
+import network.darkhelmet.stellarcrates.services.crates.samplers.SimulationResult;
+import network.darkhelmet.stellarcrates.services.crates.samplers.SimulationTask;
 import network.darkhelmet.stellarcrates.services.messages.MessageService;
-import network.darkhelmet.stellarcrates.utils.InventoryUtil;
+import network.darkhelmet.stellarcrates.services.openings.OpenTransaction;
+import network.darkhelmet.stellarcrates.services.openings.OpeningJournal;
+import network.darkhelmet.stellarcrates.services.openings.OpeningService;
+import network.darkhelmet.stellarcrates.services.random.RandomService;
 
 import org.bukkit.Bukkit;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 public class CrateService implements ICrateService {
+    /**
+     * The animation service.
+     */
+    private final AnimationService animationService;
+
     /**
      * The configuration service.
      */
@@ -59,22 +78,59 @@ public class CrateService implements ICrateService {
     private final MessageService messageService;
 
     /**
-     * Cache of crates.
+     * The opening service.
+     */
+    private final OpeningService openingService;
+
+    /**
+     * The opening journal.
+     */
+    private final OpeningJournal openingJournal;
+
+    /**
+     * The random service.
+     */
+    private final RandomService randomService;
+
+    /**
+     * A read-only snapshot of crates, replaced on every change.
+     */
+    private volatile Map<String, ICrate> crates = Map.of();
+
+    /**
+     * Index of all crate instances by block position.
+     */
+    private final CrateInstanceRegistry crateInstanceRegistry = new CrateInstanceRegistry();
+
+    /**
+     * Whether an async reload is in progress.
      */
-    private final Map<String, ICrate> crates = new HashMap<>();
+    private final AtomicBoolean reloading = new AtomicBoolean(false);
 
     /**
      * Construct the crate service.
      *
+     * @param animationService The animation service
      * @param configurationService The configuration service
      * @param messageService The message service
+     * @param openingService The opening service
+     * @param openingJournal The opening journal
+     * @param randomService The random service
      */
     @Inject
     public CrateService(
+            AnimationService animationService,
             ConfigurationService configurationService,
-            MessageService messageService) {
+            MessageService messageService,
+            OpeningService openingService,
+            OpeningJournal openingJournal,
+            RandomService randomService) {
+        this.animationService = animationService;
         this.configurationService = configurationService;
         this.messageService = messageService;
+        this.openingService = openingService;
+        this.openingJournal = openingJournal;
+        this.randomService = randomService;
 
         reload();
     }
@@ -85,8 +141,16 @@ public class CrateService implements ICrateService {
      * @param crateConfiguration The crate configuration
      */
     private Crate addCrate(CrateConfiguration crateConfiguration) {
-        Crate crate = new Crate(crateConfiguration);
-        crates.put(crateConfiguration.identifier(), crate);
+        Crate crate = new Crate(crateConfiguration, crateInstanceRegistry,
+            configurationService.stellarCratesConfig().keyMatchMode(), randomService);
+
+        synchronized (this) {
+            Map<String, ICrate> copy = new HashMap<>(crates);
+            copy.put(crateConfiguration.identifier(), crate);
+            crates = Collections.unmodifiableMap(copy);
+        }
+
+        crate.crateInstances().values().forEach(crateInstanceRegistry::register);
 
         return crate;
     }
@@ -98,14 +162,26 @@ public class CrateService implements ICrateService {
 
     @Override
     public Optional<ICrateInstance> crateInstance(Location location) {
-        for (ICrate crate : crates().values()) {
-            Optional<ICrateInstance> crateInstance = crate.crateInstance(location);
-            if (crateInstance.isPresent()) {
-                return crateInstance;
-            }
+        if (location.getWorld() == null) {
+            return Optional.empty();
         }
 
-        return Optional.empty();
+        return Optional.ofNullable(crateInstance(
+            location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+    }
+
+    @Override
+    public ICrateInstance crateInstance(World world, int x, int y, int z) {
+        return crateInstanceRegistry.get(world, x, y, z);
+    }
+
+    /**
+     * Get the crate instance registry.
+     *
+     * @return The crate instance registry
+     */
+    public CrateInstanceRegistry crateInstanceRegistry() {
+        return crateInstanceRegistry;
     }
 
     @Override
@@ -133,15 +209,23 @@ public class CrateService implements ICrateService {
     public void delete(ICrate crate) {
         crate.unloadInstances();
 
-        crates.remove(crate.config().identifier());
+        synchronized (this) {
+            Map<String, ICrate> copy = new HashMap<>(crates);
+            copy.remove(crate.config().identifier());
+            crates = Collections.unmodifiableMap(copy);
+        }
 
         configurationService.crateConfigurations().remove(crate.config());
     }
 
     @Override
     public void openCrate(ICrateInstance crateInstance, Player player) {
-        Optional<IReward> rewardOptional = crateInstance.crate().randomReward();
-        if (rewardOptional.isEmpty()) {
+        openCrate(crateInstance, player, 1);
+    }
+
+    @Override
+    public void openCrate(ICrateInstance crateInstance, Player player, int count) {
+        if (count <= 0 || crateInstance.crate().rewards().isEmpty()) {
             return;
         }
 
@@ -156,40 +240,68 @@ public class CrateService implements ICrateService {
             return;
         }
 
-        // Ensure inventory has room
-        if (InventoryUtil.isInventoryFull(player.getInventory())) {
-            messageService.errorInventoryFull(player);
-            return;
+        // Deduct keys, once for the whole batch
+        boolean creative = player.getGameMode().equals(GameMode.CREATIVE);
+        int opened = creative ? count : Math.min(count, itemStack.getAmount());
+        if (!creative) {
+            itemStack.setAmount(itemStack.getAmount() - opened);
         }
 
-        // Deduct key
-        if (!player.getGameMode().equals(GameMode.CREATIVE)) {
-            itemStack.setAmount(itemStack.getAmount() - 1);
-        }
+        // Single opens may animate. The reward is drawn now and applied once revealed
+        ICrate crate = crateInstance.crate();
+        if (opened == 1 && crate.config().animation() != AnimationType.NONE && !animationService.animating(player)) {
+            Optional<IReward> reward = crate.randomReward();
+            if (reward.isPresent()) {
+                OpenTransaction transaction = new OpenTransaction(player, crateInstance, Map.of(reward.get(), 1));
+                transaction.animating(true);
+                openingService.submit(transaction);
 
-        IReward reward = rewardOptional.get();
+                animationService.play(player, crate, reward.get(), () -> transaction.animating(false));
 
-        // Give the reward item
-        if (reward.config().givesDisplayItem()) {
-            reward.deliverTo(player.getInventory());
+                return;
+            }
         }
 
-        // Execute commands
-        for (String command : reward.config().commands()) {
-            String parsed = PlaceholderAPI.setPlaceholders(player, command);
-            Bukkit.getServer().dispatchCommand(Bukkit.getConsoleSender(), parsed);
-        }
+        // Rewards are drawn and applied by the opening pipeline
+        openingService.submit(new OpenTransaction(player, crateInstance, opened));
+    }
 
-        // Play sounds
-        for (SoundConfiguration onRewardSound : crateInstance.crate().config().onRewardSounds()) {
-            if (onRewardSound != null) {
-                player.playSound(
-                    player.getLocation(), onRewardSound.sound(), onRewardSound.volume(), onRewardSound.pitch());
+    /**
+     * Finish any of a player's opens that were interrupted before the last shutdown.
+     *
+     * @param player The player
+     */
+    public void finishIncompleteOpens(Player player) {
+        for (OpeningJournal.Entry entry : openingJournal.takePending(player.getUniqueId())) {
+            Optional<ICrate> crateOptional = crate(entry.crateId());
+            if (crateOptional.isEmpty()) {
+                openingJournal.abandon(entry, player.getName(), "the crate no longer exists");
+                continue;
+            }
+
+            ICrate crate = crateOptional.get();
+            Map<IReward, Integer> rewards = null;
+            if (entry.rewards() != null) {
+                rewards = new LinkedHashMap<>();
+                for (Map.Entry<String, Integer> drawn : entry.rewards().entrySet()) {
+                    Optional<IReward> reward = crate.reward(drawn.getKey());
+                    if (reward.isEmpty()) {
+                        rewards = null;
+                        break;
+                    }
+
+                    rewards.put(reward.get(), drawn.getValue());
+                }
+
+                if (rewards == null) {
+                    openingJournal.abandon(entry, player.getName(), "a drawn reward was removed");
+                    continue;
+                }
             }
-        }
 
-        // Message
-        messageService.rewardGivenSelf(player, reward);
+            openingService.submit(new OpenTransaction(entry.id(), player, crate, entry.count(), rewards,
+                entry.delivered(), entry.commandsStarted()));
+        }
     }
 
     /**
@@ -217,12 +329,148 @@ public class CrateService implements ICrateService {
      * Reloads all crate items from their configs.
      */
     public void reload() {
-        crates.values().forEach(ICrate::unloadInstances);
+        List<Crate> loaded = new ArrayList<>();
+        for (CrateConfiguration crateConfiguration : configurationService.crateConfigurations()) {
+            loaded.add(new Crate(crateConfiguration, crateInstanceRegistry,
+                configurationService.stellarCratesConfig().keyMatchMode(), randomService));
+        }
 
-        crates.clear();
+        swapCrates(loaded);
+    }
 
-        for (CrateConfiguration crateConfiguration : configurationService.crateConfigurations()) {
-            addCrate(crateConfiguration);
+    /**
+     * Reload configuration files and crates without stalling the main thread.
+     *
+     * <p>Files are parsed and crates are built on a worker thread. Only applying the
+     * configs, diffing holograms and swapping the registry happens on the main thread.</p>
+     *
+     * @param callback Called on the main thread with the reload timings
+     * @param onFailure Called on the main thread if the reload fails
+     * @return False if a reload is already in progress
+     */
+    public boolean reloadAsync(Consumer<ReloadTimings> callback, Runnable onFailure) {
+        if (!reloading.compareAndSet(false, true)) {
+            return false;
+        }
+
+        final long start = System.nanoTime();
+        StellarCrates plugin = StellarCrates.getInstance();
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            ConfigurationService.Configurations configurations;
+            List<Crate> loaded = new ArrayList<>();
+
+            try {
+                configurations = configurationService.readConfigurations();
+                for (CrateConfiguration crateConfiguration : configurations.crateConfigurations()) {
+                    loaded.add(new Crate(crateConfiguration, crateInstanceRegistry,
+                        configurations.stellarCratesConfiguration().keyMatchMode(), randomService));
+                }
+            } catch (Exception e) {
+                plugin.handleException(e);
+
+                Bukkit.getScheduler().runTask(plugin, () -> {
+                    reloading.set(false);
+                    onFailure.run();
+                });
+
+                return;
+            }
+
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                long mainThreadStart = System.nanoTime();
+
+                try {
+                    configurationService.applyConfigurations(configurations);
+                    swapCrates(loaded);
+                } catch (Exception e) {
+                    plugin.handleException(e);
+                    onFailure.run();
+
+                    return;
+                } finally {
+                    reloading.set(false);
+                }
+
+                long end = System.nanoTime();
+                callback.accept(new ReloadTimings(end - start, end - mainThreadStart));
+            });
+        });
+
+        return true;
+    }
+
+    /**
+     * Simulate many reward draws for a crate on the fork-join pool, off the main thread.
+     *
+     * <p>Draws use the crate's current sampler and weights but don't affect any player.</p>
+     *
+     * @param crate The crate
+     * @param draws The number of draws
+     * @param callback Called on the main thread with the result
+     * @return False if the crate has no rewards
+     */
+    public boolean simulate(Crate crate, long draws, Consumer<SimulationResult> callback) {
+        RewardSampler sampler = crate.rewardSampler();
+        if (sampler == null) {
+            return false;
+        }
+
+        double[] weights = new double[sampler.rewards().size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = sampler.weight(i);
+        }
+
+        StellarCrates plugin = StellarCrates.getInstance();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            long start = System.nanoTime();
+            long[] counts = ForkJoinPool.commonPool().invoke(
+                new SimulationTask(sampler, () -> randomService.random(crate.config()), draws));
+            long nanos = System.nanoTime() - start;
+
+            SimulationResult result = new SimulationResult(sampler.rewards(), weights, counts, draws, nanos);
+            Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
+        });
+
+        return true;
+    }
+
+    /**
+     * Replace all crates with a newly built set.
+     *
+     * <p>Instances at unchanged locations keep their existing holograms,
+     * everything else is unloaded or loaded as needed.</p>
+     *
+     * @param loaded The new crates
+     */
+    private void swapCrates(List<Crate> loaded) {
+        Map<String, ICrate> previous = crates;
+        Map<String, ICrate> next = new HashMap<>();
+        List<ICrateInstance> instances = new ArrayList<>();
+
+        for (Crate crate : loaded) {
+            next.put(crate.config().identifier(), crate);
+
+            ICrate previousCrate = previous.get(crate.config().identifier());
+            for (ICrateInstance crateInstance : crate.crateInstances().values()) {
+                instances.add(crateInstance);
+
+                if (previousCrate != null) {
+                    ICrateInstance previousInstance = previousCrate.crateInstances().get(crateInstance.location());
+                    if (previousInstance != null) {
+                        ((CrateInstance) crateInstance).adoptHolograms((CrateInstance) previousInstance);
+                    }
+                }
+            }
+        }
+
+        // Unload anything not adopted before new holograms are created, identifiers may collide
+        previous.values().forEach(crate -> crate.crateInstances().values().forEach(ICrateInstance::unload));
+
+        crateInstanceRegistry.replaceAll(instances);
+
+        synchronized (this) {
+            crates = Collections.unmodifiableMap(next);
         }
     }
 }
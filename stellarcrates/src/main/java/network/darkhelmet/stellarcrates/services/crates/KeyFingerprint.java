@@ -0,0 +1,112 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.crates;
+
+import network.darkhelmet.stellarcrates.api.services.configuration.KeyMatchMode;
+import network.darkhelmet.stellarcrates.utils.NamespacedKeys;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.persistence.PersistentDataType;
+
+/**
+ * A precomputed description of a crate key, so matching held items
+ * never has to parse the key's NBT.
+ */
+public final class KeyFingerprint {
+    /**
+     * The key material.
+     */
+    private final Material material;
+
+    /**
+     * The crate identifier stored in the key's PDC, if any.
+     */
+    private final String identifier;
+
+    /**
+     * The key's item meta, if any. Never modified.
+     */
+    private final ItemMeta meta;
+
+    /**
+     * The hash of the key's item meta, used to reject mismatches before a full comparison.
+     */
+    private final int metaHash;
+
+    /**
+     * Construct a key fingerprint.
+     *
+     * @param key The key item stack
+     */
+    public KeyFingerprint(ItemStack key) {
+        this.material = key.getType();
+        this.meta = key.hasItemMeta() ? key.getItemMeta() : null;
+        this.metaHash = meta != null ? meta.hashCode() : 0;
+        this.identifier = meta != null
+            ? meta.getPersistentDataContainer().get(NamespacedKeys.CRATE_KEY, PersistentDataType.STRING) : null;
+    }
+
+    /**
+     * Get the crate identifier stored on the key.
+     *
+     * @return The identifier, or null
+     */
+    public String identifier() {
+        return identifier;
+    }
+
+    /**
+     * Check whether an item stack matches this key.
+     *
+     * <p>Keys without a stored identifier are always matched strictly.</p>
+     *
+     * @param itemStack The item stack
+     * @param mode The match mode
+     * @return True if the item stack matches
+     */
+    public boolean matches(ItemStack itemStack, KeyMatchMode mode) {
+        if (itemStack == null || itemStack.getType() != material) {
+            return false;
+        }
+
+        ItemMeta candidate = itemStack.hasItemMeta() ? itemStack.getItemMeta() : null;
+
+        if (identifier != null) {
+            if (candidate == null || !identifier.equals(candidate.getPersistentDataContainer()
+                    .get(NamespacedKeys.CRATE_KEY, PersistentDataType.STRING))) {
+                return false;
+            }
+
+            if (mode == KeyMatchMode.IDENTIFIER) {
+                return true;
+            }
+        }
+
+        if (meta != null && candidate != null && candidate.hashCode() != metaHash) {
+            return false;
+        }
+
+        return Bukkit.getItemFactory().equals(meta, candidate);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.crates;
+
+/**
+ * Timings for a completed reload.
+ *
+ * @param totalNanos Time from start to finish, in nanoseconds
+ * @param mainThreadNanos Time spent blocking the main thread, in nanoseconds
+ */
+public record ReloadTimings(long totalNanos, long mainThreadNanos) {
+    /**
+     * Get the total time in milliseconds.
+     *
+     * @return The total milliseconds
+     */
+    public double totalMillis() {
+        return totalNanos / 1_000_000d;
+    }
+
+    /**
+     * Get the main thread time in milliseconds.
+     *
+     * @return The main thread milliseconds
+     */
+    public double mainThreadMillis() {
+        return mainThreadNanos / 1_000_000d;
+    }
+}
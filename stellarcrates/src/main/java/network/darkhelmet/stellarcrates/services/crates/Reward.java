@@ -20,12 +20,17 @@
 
 package network.darkhelmet.stellarcrates.services.crates;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import network.darkhelmet.stellarcrates.api.services.configuration.RewardConfiguration;
 import network.darkhelmet.stellarcrates.api.services.crates.IReward;
 
 import org.bukkit.Material;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
 
 public final class Reward implements IReward {
     /**
@@ -38,6 +43,19 @@ public final class Reward implements IReward {
      */
     private final ItemStack itemStack;
 
+    /**
+     * The compiled commands and the command list they were compiled from.
+     *
+     * @param source A copy of the commands
+     * @param templates The compiled templates
+     */
+    private record CompiledCommands(List<String> source, List<CommandTemplate> templates) {}
+
+    /**
+     * The compiled commands, recompiled if the configured commands change.
+     */
+    private volatile CompiledCommands compiledCommands;
+
     /**
      * Construct a reward.
      *
@@ -47,11 +65,47 @@ public final class Reward implements IReward {
     public Reward(RewardConfiguration config, ItemStack itemStack) {
         this.config = config;
         this.itemStack = itemStack;
+        this.compiledCommands = compile(config.commands());
+    }
+
+    /**
+     * Get the reward commands compiled into templates.
+     *
+     * @return The command templates
+     */
+    public List<CommandTemplate> commandTemplates() {
+        List<String> commands = config.commands();
+        CompiledCommands compiled = compiledCommands;
+
+        // The copy shares string instances, so this is a cheap identity check
+        // unless commands were edited since compiling
+        if (!compiled.source().equals(commands)) {
+            compiled = compile(commands);
+            compiledCommands = compiled;
+        }
+
+        return compiled.templates();
+    }
+
+    /**
+     * Compile commands.
+     *
+     * @param commands The commands
+     * @return The compiled commands
+     */
+    private static CompiledCommands compile(List<String> commands) {
+        List<String> source = List.copyOf(commands);
+        List<CommandTemplate> templates = new ArrayList<>(source.size());
+        for (String command : source) {
+            templates.add(CommandTemplate.compile(command));
+        }
+
+        return new CompiledCommands(source, List.copyOf(templates));
     }
 
     @Override
-    public void deliverTo(Inventory inventory) {
-        inventory.addItem(itemStack);
+    public Collection<ItemStack> deliverTo(Inventory inventory) {
+        return inventory.addItem(itemStack.clone()).values();
     }
 
     /**
@@ -63,6 +117,20 @@ public final class Reward implements IReward {
         return config;
     }
 
+    /**
+     * Get the display title, the item's display name or its material name.
+     *
+     * @return The title
+     */
+    public String title() {
+        ItemMeta meta = itemStack.getItemMeta();
+        if (meta != null && !meta.getDisplayName().isEmpty()) {
+            return meta.getDisplayName();
+        }
+
+        return itemStack.getType().name().toLowerCase().replace("_", " ");
+    }
+
     @Override
     public ItemStack toItemStack() {
         return itemStack.clone();
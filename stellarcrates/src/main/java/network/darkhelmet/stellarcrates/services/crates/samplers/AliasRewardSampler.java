@@ -0,0 +1,152 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.crates.samplers;
+
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+
+/**
+ * Samples rewards in constant time using Vose's alias method.
+ *
+ * <p>The table is built once from the reward weights and never modified,
+ * so a single sampler can be shared by any number of threads.</p>
+ */
+public final class AliasRewardSampler implements RewardSampler {
+    /**
+     * The rewards.
+     */
+    private final List<IReward> rewards;
+
+    /**
+     * The probability of keeping each column rather than taking its alias.
+     */
+    private final double[] probabilities;
+
+    /**
+     * The alias of each column.
+     */
+    private final int[] aliases;
+
+    /**
+     * The weights the table was built from.
+     */
+    private final double[] weights;
+
+    /**
+     * Build an alias table for the given rewards.
+     *
+     * <p>Rewards with a weight of zero or less are never drawn. If no reward
+     * has a positive weight, all rewards are equally likely.</p>
+     *
+     * @param rewards The rewards, must not be empty
+     * @param weights The weight of each reward
+     */
+    public AliasRewardSampler(List<IReward> rewards, double[] weights) {
+        this.rewards = List.copyOf(rewards);
+        this.weights = weights.clone();
+
+        int size = this.rewards.size();
+        this.probabilities = new double[size];
+        this.aliases = new int[size];
+
+        double totalWeight = 0;
+        for (double weight : this.weights) {
+            totalWeight += Math.max(0, weight);
+        }
+
+        double[] scaled = new double[size];
+        for (int i = 0; i < size; i++) {
+            scaled[i] = totalWeight > 0 ? Math.max(0, this.weights[i]) * size / totalWeight : 1;
+        }
+
+        int[] small = new int[size];
+        int[] large = new int[size];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+
+            probabilities[less] = scaled[less];
+            aliases[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+
+        // Whatever remains is (within rounding error) exactly full
+        while (largeCount > 0) {
+            int index = large[--largeCount];
+            probabilities[index] = 1;
+            aliases[index] = index;
+        }
+
+        while (smallCount > 0) {
+            int index = small[--smallCount];
+            probabilities[index] = 1;
+            aliases[index] = index;
+        }
+    }
+
+    @Override
+    public List<IReward> rewards() {
+        return rewards;
+    }
+
+    @Override
+    public int sampleIndex(RandomGenerator random) {
+        int column = random.nextInt(probabilities.length);
+
+        return random.nextDouble() < probabilities[column] ? column : aliases[column];
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Alias tables can't be patched, this rebuilds the whole table in O(n).</p>
+     */
+    @Override
+    public RewardSampler updateWeight(int index, double weight) {
+        double[] updated = weights.clone();
+        updated[index] = weight;
+
+        return new AliasRewardSampler(rewards, updated);
+    }
+
+    @Override
+    public double weight(int index) {
+        return weights[index];
+    }
+}
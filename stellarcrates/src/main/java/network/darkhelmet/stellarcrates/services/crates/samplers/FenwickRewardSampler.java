@@ -0,0 +1,195 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.crates.samplers;
+
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.random.RandomGenerator;
+
+import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+
+/**
+ * Samples rewards using a binary indexed (Fenwick) tree of weights.
+ *
+ * <p>Draws and weight updates are both O(log n), which suits crates whose weights
+ * change often at runtime (pity systems, limited stock, timed events).</p>
+ *
+ * <p>Weights are updated in place under a write lock. Draws don't lock: they read the tree
+ * optimistically and only retry under a read lock if an update ran meanwhile. Copying the
+ * tree for every update would make updates O(n), which is what this sampler avoids.</p>
+ */
+public final class FenwickRewardSampler implements RewardSampler {
+    /**
+     * The rewards.
+     */
+    private final List<IReward> rewards;
+
+    /**
+     * The current weight of each reward, negative weights are stored as zero.
+     */
+    private final double[] weights;
+
+    /**
+     * The tree, 1-indexed. Each node holds the sum of a power-of-two range of weights.
+     */
+    private final double[] tree;
+
+    /**
+     * The highest power of two not greater than the reward count.
+     */
+    private final int highestStep;
+
+    /**
+     * The sum of all weights.
+     */
+    private double totalWeight;
+
+    /**
+     * Guards the tree during updates.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Build a tree for the given rewards.
+     *
+     * <p>Rewards with a weight of zero or less are never drawn. If no reward
+     * has a positive weight, all rewards are equally likely.</p>
+     *
+     * @param rewards The rewards, must not be empty
+     * @param weights The weight of each reward
+     */
+    public FenwickRewardSampler(List<IReward> rewards, double[] weights) {
+        this.rewards = List.copyOf(rewards);
+        this.weights = new double[weights.length];
+        this.tree = new double[weights.length + 1];
+        this.highestStep = Integer.highestOneBit(weights.length);
+
+        // Linear-time construction
+        for (int i = 0; i < weights.length; i++) {
+            this.weights[i] = Math.max(0, weights[i]);
+            totalWeight += this.weights[i];
+
+            int node = i + 1;
+            tree[node] += this.weights[i];
+
+            int parent = node + (node & -node);
+            if (parent < tree.length) {
+                tree[parent] += tree[node];
+            }
+        }
+    }
+
+    @Override
+    public List<IReward> rewards() {
+        return rewards;
+    }
+
+    @Override
+    public int sampleIndex(RandomGenerator random) {
+        // Drawn once, so a retry doesn't consume another number from seeded generators
+        double target = random.nextDouble();
+
+        long stamp = lock.tryOptimisticRead();
+        int index = find(target);
+        if (lock.validate(stamp)) {
+            return index;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return find(target);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Find the reward a uniform number falls on.
+     *
+     * <p>Always returns a valid index, even if an update tears the reads.
+     * Callers validate and discard results from torn reads.</p>
+     *
+     * @param target A uniform number in [0, 1)
+     * @return The reward index
+     */
+    private int find(double target) {
+        double total = totalWeight;
+        if (total <= 0) {
+            return Math.min((int) (target * weights.length), weights.length - 1);
+        }
+
+        double remaining = target * total;
+
+        // Descend the tree to find the first index whose prefix sum exceeds the target
+        int position = 0;
+        for (int step = highestStep; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] <= remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+
+        // Rounding drift can push the target past the last positive weight
+        if (position >= weights.length || weights[position] <= 0) {
+            position = Math.min(position, weights.length - 1);
+            while (position > 0 && weights[position] <= 0) {
+                position--;
+            }
+        }
+
+        return position;
+    }
+
+    @Override
+    public RewardSampler updateWeight(int index, double weight) {
+        long stamp = lock.writeLock();
+        try {
+            double delta = Math.max(0, weight) - weights[index];
+            weights[index] += delta;
+            totalWeight += delta;
+
+            for (int node = index + 1; node < tree.length; node += node & -node) {
+                tree[node] += delta;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        return this;
+    }
+
+    @Override
+    public double weight(int index) {
+        long stamp = lock.tryOptimisticRead();
+        double weight = weights[index];
+        if (lock.validate(stamp)) {
+            return weight;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return weights[index];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
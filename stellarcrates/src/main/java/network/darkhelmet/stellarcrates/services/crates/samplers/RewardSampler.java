@@ -0,0 +1,73 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.crates.samplers;
+
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+
+public interface RewardSampler {
+    /**
+     * Get the rewards this sampler draws from, in index order.
+     *
+     * @return The rewards
+     */
+    List<IReward> rewards();
+
+    /**
+     * Draw a random reward.
+     *
+     * @param random The random generator
+     * @return The reward
+     */
+    default IReward sample(RandomGenerator random) {
+        return rewards().get(sampleIndex(random));
+    }
+
+    /**
+     * Draw the index of a random reward.
+     *
+     * @param random The random generator
+     * @return The reward index
+     */
+    int sampleIndex(RandomGenerator random);
+
+    /**
+     * Change the weight of a reward.
+     *
+     * <p>Samplers may update in place or return a replacement,
+     * callers must use the returned sampler from then on.</p>
+     *
+     * @param index The reward index
+     * @param weight The new weight
+     * @return The sampler to use from now on
+     */
+    RewardSampler updateWeight(int index, double weight);
+
+    /**
+     * Get the current weight of a reward.
+     *
+     * @param index The reward index
+     * @return The weight
+     */
+    double weight(int index);
+}
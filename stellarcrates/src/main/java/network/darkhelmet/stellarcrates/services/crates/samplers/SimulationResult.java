@@ -0,0 +1,126 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.crates.samplers;
+
+import java.util.List;
+
+import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+
+/**
+ * The outcome of a reward simulation.
+ *
+ * @param rewards The rewards, in sampler order
+ * @param weights The weights at the start of the simulation
+ * @param counts How many times each reward was drawn
+ * @param draws The total number of draws
+ * @param nanos Time spent drawing, in nanoseconds
+ */
+public record SimulationResult(List<IReward> rewards, double[] weights, long[] counts, long draws, long nanos) {
+    /**
+     * Get the configured probability of a reward.
+     *
+     * @param index The reward index
+     * @return The expected probability
+     */
+    public double expected(int index) {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+
+        return total > 0 ? weights[index] / total : 0;
+    }
+
+    /**
+     * Get the observed probability of a reward.
+     *
+     * @param index The reward index
+     * @return The observed probability
+     */
+    public double observed(int index) {
+        return draws > 0 ? (double) counts[index] / draws : 0;
+    }
+
+    /**
+     * Get Pearson's chi-square statistic of the observed counts against the weights.
+     *
+     * @return The chi-square statistic
+     */
+    public double chiSquare() {
+        double chiSquare = 0;
+        for (int i = 0; i < counts.length; i++) {
+            double expected = expected(i) * draws;
+            if (expected > 0) {
+                double delta = counts[i] - expected;
+                chiSquare += delta * delta / expected;
+            }
+        }
+
+        return chiSquare;
+    }
+
+    /**
+     * Get the degrees of freedom, one less than the rewards that can be drawn.
+     *
+     * @return The degrees of freedom
+     */
+    public int degreesOfFreedom() {
+        int possible = 0;
+        for (double weight : weights) {
+            if (weight > 0) {
+                possible++;
+            }
+        }
+
+        return Math.max(1, possible - 1);
+    }
+
+    /**
+     * Get the chi-square value a fair sampler stays under 95% of the time.
+     *
+     * <p>Uses the Wilson-Hilferty approximation.</p>
+     *
+     * @return The critical value
+     */
+    public double criticalValue() {
+        double df = degreesOfFreedom();
+        double term = 2 / (9 * df);
+        return df * Math.pow(1 - term + 1.6449 * Math.sqrt(term), 3);
+    }
+
+    /**
+     * Get the draw throughput.
+     *
+     * @return Draws per second
+     */
+    public double drawsPerSecond() {
+        return nanos > 0 ? draws * 1_000_000_000d / nanos : 0;
+    }
+
+    /**
+     * Get the draw time in milliseconds.
+     *
+     * @return The milliseconds
+     */
+    public double millis() {
+        return nanos / 1_000_000d;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.crates.samplers;
+
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+/**
+ * Draws from a sampler in parallel, splitting the work across the fork-join pool.
+ */
+public class SimulationTask extends RecursiveTask<long[]> {
+    /**
+     * Draws below this are run on the current thread rather than split.
+     */
+    private static final long LEAF_DRAWS = 1 << 16;
+
+    /**
+     * The sampler.
+     */
+    private final RewardSampler sampler;
+
+    /**
+     * Supplies a random generator for the running thread.
+     */
+    private final Supplier<RandomGenerator> random;
+
+    /**
+     * The number of draws.
+     */
+    private final long draws;
+
+    /**
+     * Construct a simulation task.
+     *
+     * @param sampler The sampler
+     * @param random Supplies a random generator for the running thread
+     * @param draws The number of draws
+     */
+    public SimulationTask(RewardSampler sampler, Supplier<RandomGenerator> random, long draws) {
+        this.sampler = sampler;
+        this.random = random;
+        this.draws = draws;
+    }
+
+    @Override
+    protected long[] compute() {
+        if (draws <= LEAF_DRAWS) {
+            RandomGenerator generator = random.get();
+            long[] counts = new long[sampler.rewards().size()];
+            for (long i = 0; i < draws; i++) {
+                counts[sampler.sampleIndex(generator)]++;
+            }
+
+            return counts;
+        }
+
+        long half = draws / 2;
+        SimulationTask left = new SimulationTask(sampler, random, half);
+        SimulationTask right = new SimulationTask(sampler, random, draws - half);
+        left.fork();
+
+        long[] counts = right.compute();
+        long[] leftCounts = left.join();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += leftCounts[i];
+        }
+
+        return counts;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.mailbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import network.darkhelmet.stellarcrates.utils.InventoryUtil;
+
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Reward items waiting for a player to claim them.
+ *
+ * <p>Similar items share one entry with a total amount, however many stacks that is.
+ * Main thread only, saves work from a snapshot.</p>
+ */
+public class Mailbox {
+    /**
+     * Items waiting to be claimed.
+     *
+     * @param item The item, with an amount of one
+     * @param amount The total amount
+     */
+    public record Entry(ItemStack item, int amount) {}
+
+    /**
+     * The entries.
+     */
+    private final List<Entry> entries;
+
+    /**
+     * Whether there are changes not yet saved.
+     */
+    private boolean dirty = false;
+
+    /**
+     * Construct an empty mailbox.
+     */
+    public Mailbox() {
+        this(new ArrayList<>());
+    }
+
+    /**
+     * Construct a mailbox from stored entries.
+     *
+     * @param entries The entries
+     */
+    public Mailbox(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Add an item stack.
+     *
+     * @param itemStack The item stack
+     */
+    public void add(ItemStack itemStack) {
+        if (itemStack == null || itemStack.getAmount() <= 0) {
+            return;
+        }
+
+        dirty = true;
+
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.item().isSimilar(itemStack)) {
+                long amount = (long) entry.amount() + itemStack.getAmount();
+                entries.set(i, new Entry(entry.item(), (int) Math.min(amount, Integer.MAX_VALUE)));
+
+                return;
+            }
+        }
+
+        ItemStack item = itemStack.clone();
+        item.setAmount(1);
+        entries.add(new Entry(item, itemStack.getAmount()));
+    }
+
+    /**
+     * Give as much of an entry as fits in an inventory.
+     *
+     * @param entry The entry
+     * @param inventory The inventory
+     * @return The amount given
+     */
+    public int claim(Entry entry, Inventory inventory) {
+        int index = entries.indexOf(entry);
+        if (index == -1) {
+            return 0;
+        }
+
+        // Never build more stacks than the inventory could hold
+        int capacity = inventory.getStorageContents().length * Math.max(1, entry.item().getMaxStackSize());
+        int offered = Math.min(entry.amount(), capacity);
+
+        List<ItemStack> stacks = new ArrayList<>();
+        InventoryUtil.mergeStacks(entry.item(), offered, stacks);
+
+        int leftover = 0;
+        Map<Integer, ItemStack> leftovers = inventory.addItem(stacks.toArray(new ItemStack[0]));
+        for (ItemStack stack : leftovers.values()) {
+            leftover += stack.getAmount();
+        }
+
+        int given = offered - leftover;
+        if (given <= 0) {
+            return 0;
+        }
+
+        dirty = true;
+
+        int remaining = entry.amount() - given;
+        if (remaining > 0) {
+            entries.set(index, new Entry(entry.item(), remaining));
+        } else {
+            entries.remove(index);
+        }
+
+        return given;
+    }
+
+    /**
+     * Get the entries.
+     *
+     * @return The entries
+     */
+    public List<Entry> entries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Whether there's nothing to claim.
+     *
+     * @return True if empty
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Get the total number of items waiting.
+     *
+     * @return The item count
+     */
+    public int itemCount() {
+        long count = 0;
+        for (Entry entry : entries) {
+            count += entry.amount();
+        }
+
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Whether there are changes not yet saved.
+     *
+     * @return True if dirty
+     */
+    public boolean dirty() {
+        return dirty;
+    }
+
+    /**
+     * Copy the entries for saving and mark the mailbox clean.
+     *
+     * @return The entries
+     */
+    public List<Entry> snapshot() {
+        dirty = false;
+
+        return List.copyOf(entries);
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.mailbox;
+
+import com.google.inject.Inject;
+
+import dev.triumphteam.gui.builder.item.ItemBuilder;
+import dev.triumphteam.gui.guis.Gui;
+import dev.triumphteam.gui.guis.PaginatedGui;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import net.kyori.adventure.text.format.TextColor;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+
+import network.darkhelmet.stellarcrates.StellarCrates;
+import network.darkhelmet.stellarcrates.services.messages.MessageService;
+
+import org.apache.logging.log4j.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+/**
+ * Holds reward items that didn't fit in a player's inventory until they claim them.
+ *
+ * <p>Mailboxes are read when a player joins and dropped when they quit, once saved.
+ * Reads and writes run in order on a single IO thread, so a rejoin always sees
+ * the last save. Deposits and claims for a mailbox that isn't loaded wait for its read,
+ * and every deposit and claim is saved right away. Everything else is main thread only.</p>
+ */
+public class MailboxService {
+    /**
+     * The logger.
+     */
+    private final Logger logger;
+
+    /**
+     * The mailbox store.
+     */
+    private final MailboxStore mailboxStore;
+
+    /**
+     * The message service.
+     */
+    private final MessageService messageService;
+
+    /**
+     * Loaded mailboxes.
+     */
+    private final Map<UUID, Mailbox> mailboxes = new HashMap<>();
+
+    /**
+     * Work waiting on mailboxes being read, by player.
+     */
+    private final Map<UUID, List<Consumer<Mailbox>>> loading = new HashMap<>();
+
+    /**
+     * Saves queued but not yet written, by player.
+     */
+    private final Map<UUID, Integer> pendingSaves = new HashMap<>();
+
+    /**
+     * Reads and writes mailbox files.
+     */
+    private final ExecutorService io = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StellarCrates Mailbox IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Construct the mailbox service.
+     *
+     * @param logger The logger
+     * @param mailboxStore The mailbox store
+     * @param messageService The message service
+     */
+    @Inject
+    public MailboxService(Logger logger, MailboxStore mailboxStore, MessageService messageService) {
+        this.logger = logger;
+        this.mailboxStore = mailboxStore;
+        this.messageService = messageService;
+    }
+
+    /**
+     * Load a player's mailbox in the background and let them know if anything is waiting.
+     *
+     * @param player The player
+     */
+    public void load(Player player) {
+        UUID uuid = player.getUniqueId();
+        withMailbox(uuid, mailbox -> {
+            if (player.isOnline()) {
+                notifyWaiting(player, mailbox);
+            } else {
+                evict(uuid, mailbox);
+            }
+        });
+    }
+
+    /**
+     * Run something with a player's mailbox, once it's been read in the background if it isn't loaded.
+     *
+     * @param uuid The player uuid
+     * @param callback Run on the main thread with the mailbox
+     */
+    private void withMailbox(UUID uuid, Consumer<Mailbox> callback) {
+        Mailbox mailbox = mailboxes.get(uuid);
+        if (mailbox != null) {
+            callback.accept(mailbox);
+            return;
+        }
+
+        // Already being read, wait for it
+        List<Consumer<Mailbox>> callbacks = loading.get(uuid);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        loading.put(uuid, callbacks);
+
+        io.execute(() -> {
+            Mailbox loaded = read(uuid);
+            runTask(() -> loaded(uuid, loaded));
+        });
+    }
+
+    /**
+     * Store a mailbox that finished reading and run everything waiting on it.
+     *
+     * @param uuid The player uuid
+     * @param mailbox The mailbox
+     */
+    private void loaded(UUID uuid, Mailbox mailbox) {
+        mailboxes.put(uuid, mailbox);
+
+        List<Consumer<Mailbox>> callbacks = loading.remove(uuid);
+        if (callbacks != null) {
+            callbacks.forEach(callback -> callback.accept(mailbox));
+        }
+    }
+
+    /**
+     * Save a player's mailbox if needed and drop it from memory.
+     *
+     * @param player The player
+     */
+    public void unload(Player player) {
+        UUID uuid = player.getUniqueId();
+        Mailbox mailbox = mailboxes.get(uuid);
+        if (mailbox == null) {
+            return;
+        }
+
+        if (mailbox.dirty()) {
+            // Evicted once the save is written
+            save(uuid, mailbox);
+        } else if (!pendingSaves.containsKey(uuid)) {
+            // Still online while the quit event runs
+            mailboxes.remove(uuid, mailbox);
+        }
+    }
+
+    /**
+     * Store items for a player to claim later.
+     *
+     * @param player The player
+     * @param items The items
+     */
+    public void deposit(Player player, Collection<ItemStack> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        UUID uuid = player.getUniqueId();
+        List<ItemStack> deposited = List.copyOf(items);
+        withMailbox(uuid, mailbox -> {
+            int count = 0;
+            for (ItemStack item : deposited) {
+                mailbox.add(item);
+                count += item.getAmount();
+            }
+
+            save(uuid, mailbox);
+
+            if (player.isOnline()) {
+                messageService.mailboxDeposited(player, count);
+            }
+        });
+    }
+
+    /**
+     * Open the claim gui.
+     *
+     * @param player The player
+     */
+    public void openClaim(Player player) {
+        withMailbox(player.getUniqueId(), mailbox -> {
+            if (player.isOnline()) {
+                openClaim(player, mailbox);
+            }
+        });
+    }
+
+    /**
+     * Open the claim gui for a loaded mailbox.
+     *
+     * @param player The player
+     * @param mailbox The mailbox
+     */
+    private void openClaim(Player player, Mailbox mailbox) {
+        if (mailbox.isEmpty()) {
+            messageService.mailboxEmpty(player);
+            return;
+        }
+
+        PaginatedGui gui = Gui.paginated()
+            .title(Component.text("Mailbox"))
+            .rows(6)
+            .pageSize(45)
+            .disableAllInteractions()
+            .create();
+
+        gui.setItem(6, 3, ItemBuilder.from(Material.ARROW)
+            .name(Component.text("Previous")).asGuiItem(event -> gui.previous()));
+        gui.setItem(6, 5, ItemBuilder.from(Material.CHEST)
+            .name(Component.text("Claim All")).asGuiItem(event -> {
+                for (Mailbox.Entry entry : new ArrayList<>(mailbox.entries())) {
+                    mailbox.claim(entry, player.getInventory());
+                }
+
+                refresh(gui, player, mailbox);
+            }));
+        gui.setItem(6, 7, ItemBuilder.from(Material.ARROW)
+            .name(Component.text("Next")).asGuiItem(event -> gui.next()));
+
+        gui.setCloseGuiAction(event -> {
+            if (mailbox.dirty()) {
+                save(player.getUniqueId(), mailbox);
+            }
+        });
+
+        populate(gui, player, mailbox);
+        gui.open(player);
+    }
+
+    /**
+     * Fill the claim gui with a mailbox's entries.
+     *
+     * @param gui The gui
+     * @param player The player
+     * @param mailbox The mailbox
+     */
+    private void populate(PaginatedGui gui, Player player, Mailbox mailbox) {
+        gui.clearPageItems();
+
+        LegacyComponentSerializer serializer = LegacyComponentSerializer.builder()
+            .hexColors().useUnusualXRepeatedCharacterHexFormat().build();
+
+        for (Mailbox.Entry entry : mailbox.entries()) {
+            ItemStack itemStack = entry.item().clone();
+            itemStack.setAmount(Math.min(entry.amount(), itemStack.getMaxStackSize()));
+
+            ItemMeta meta = itemStack.getItemMeta();
+            if (meta != null) {
+                List<String> lore = meta.getLore();
+                if (lore == null) {
+                    lore = new ArrayList<>();
+                }
+
+                Component text = Component.text("Unclaimed: ", TextColor.fromCSSHexString("#aaf786"))
+                    .append(Component.text(entry.amount(), NamedTextColor.GOLD));
+
+                lore.add("");
+                lore.add(serializer.serialize(text));
+                meta.setLore(lore);
+                itemStack.setItemMeta(meta);
+            }
+
+            gui.addItem(ItemBuilder.from(itemStack).asGuiItem(event -> {
+                if (mailbox.claim(entry, player.getInventory()) == 0) {
+                    messageService.errorInventoryFull(player);
+                    return;
+                }
+
+                refresh(gui, player, mailbox);
+            }));
+        }
+    }
+
+    /**
+     * Save and redraw the claim gui after a claim, closing it once the mailbox is empty.
+     *
+     * @param gui The gui
+     * @param player The player
+     * @param mailbox The mailbox
+     */
+    private void refresh(PaginatedGui gui, Player player, Mailbox mailbox) {
+        // Claimed items are already in the inventory, so a crash must not bring them back
+        if (mailbox.dirty()) {
+            save(player.getUniqueId(), mailbox);
+        }
+
+        if (mailbox.isEmpty()) {
+            gui.close(player);
+            return;
+        }
+
+        populate(gui, player, mailbox);
+        gui.update();
+    }
+
+    /**
+     * Tell a player they have items waiting.
+     *
+     * @param player The player
+     * @param mailbox The mailbox
+     */
+    private void notifyWaiting(Player player, Mailbox mailbox) {
+        if (!mailbox.isEmpty()) {
+            messageService.mailboxWaiting(player, mailbox.itemCount());
+        }
+    }
+
+    /**
+     * Read a mailbox, moving unreadable files aside.
+     *
+     * @param uuid The player uuid
+     * @return The mailbox, empty if it couldn't be read
+     */
+    private Mailbox read(UUID uuid) {
+        try {
+            return mailboxStore.read(uuid);
+        } catch (IOException e) {
+            try {
+                Path moved = mailboxStore.quarantine(uuid);
+                logger.error("Could not read the mailbox for {}, moved it to {}.", uuid, moved);
+            } catch (IOException ex) {
+                logger.error("Could not read or move the mailbox for {}.", uuid);
+            }
+
+            StellarCrates.getInstance().handleException(e);
+
+            return new Mailbox();
+        }
+    }
+
+    /**
+     * Queue a mailbox save.
+     *
+     * @param uuid The player uuid
+     * @param mailbox The mailbox
+     */
+    private void save(UUID uuid, Mailbox mailbox) {
+        // Shutting down, changed mailboxes are written by shutdown()
+        if (io.isShutdown()) {
+            return;
+        }
+
+        List<Mailbox.Entry> snapshot = mailbox.snapshot();
+        pendingSaves.merge(uuid, 1, Integer::sum);
+
+        io.execute(() -> {
+            try {
+                mailboxStore.write(uuid, snapshot);
+            } catch (IOException e) {
+                logger.error("Could not save the mailbox for {}.", uuid);
+                StellarCrates.getInstance().handleException(e);
+            }
+
+            runTask(() -> {
+                pendingSaves.computeIfPresent(uuid, (u, pending) -> pending > 1 ? pending - 1 : null);
+                evict(uuid, mailbox);
+            });
+        });
+    }
+
+    /**
+     * Drop a mailbox from memory if its player is offline and nothing is left to save.
+     *
+     * @param uuid The player uuid
+     * @param mailbox The mailbox
+     */
+    private void evict(UUID uuid, Mailbox mailbox) {
+        if (Bukkit.getPlayer(uuid) == null && !mailbox.dirty() && !pendingSaves.containsKey(uuid)) {
+            mailboxes.remove(uuid, mailbox);
+        }
+    }
+
+    /**
+     * Run a task on the main thread, unless the plugin is disabling.
+     *
+     * @param task The task
+     */
+    private void runTask(Runnable task) {
+        if (StellarCrates.getInstance().isEnabled()) {
+            Bukkit.getScheduler().runTask(StellarCrates.getInstance(), task);
+        }
+    }
+
+    /**
+     * Finish queued writes and save every changed mailbox. Called when the plugin disables.
+     */
+    public void shutdown() {
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Timed out waiting for mailbox saves, some may not have been written.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Reads that finished too late to hand over, deposits may be waiting on them
+        for (UUID uuid : new ArrayList<>(loading.keySet())) {
+            loaded(uuid, read(uuid));
+        }
+
+        mailboxes.forEach((uuid, mailbox) -> {
+            if (mailbox.dirty()) {
+                try {
+                    mailboxStore.write(uuid, mailbox.snapshot());
+                } catch (IOException e) {
+                    logger.error("Could not save the mailbox for {}.", uuid);
+                    StellarCrates.getInstance().handleException(e);
+                }
+            }
+        });
+    }
+}
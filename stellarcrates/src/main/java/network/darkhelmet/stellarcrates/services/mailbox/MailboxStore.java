@@ -0,0 +1,176 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.mailbox;
+
+import com.google.inject.Inject;
+
+import de.tr7zw.nbtapi.NBTContainer;
+import de.tr7zw.nbtapi.NBTItem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Stores each player's mailbox in its own small binary file.
+ *
+ * <p>A file is a gzipped stream of a magic number, a format version, the entry count
+ * and each entry's amount followed by its item as a length-prefixed NBT string.
+ * Files are replaced atomically and deleted once a mailbox is empty.</p>
+ */
+public class MailboxStore {
+    /**
+     * Identifies mailbox files, "SCMB".
+     */
+    private static final int MAGIC = 0x53434D42;
+
+    /**
+     * The file format version.
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * The mailbox directory.
+     */
+    private final Path directory;
+
+    /**
+     * Construct the mailbox store.
+     *
+     * @param dataPath The plugin data path
+     */
+    @Inject
+    public MailboxStore(Path dataPath) {
+        this.directory = dataPath.resolve("mailbox");
+    }
+
+    /**
+     * Get a player's mailbox file.
+     *
+     * @param uuid The player uuid
+     * @return The file
+     */
+    private Path file(UUID uuid) {
+        return directory.resolve(uuid + ".dat");
+    }
+
+    /**
+     * Read a player's mailbox.
+     *
+     * @param uuid The player uuid
+     * @return The mailbox, empty if the player has none
+     * @throws IOException If the file can't be read or isn't a mailbox
+     */
+    public Mailbox read(UUID uuid) throws IOException {
+        Path file = file(uuid);
+        if (!Files.exists(file)) {
+            return new Mailbox();
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a mailbox file: " + file);
+            }
+
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported mailbox version " + version + ": " + file);
+            }
+
+            int count = in.readInt();
+            List<Mailbox.Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int amount = in.readInt();
+                byte[] nbt = new byte[in.readInt()];
+                in.readFully(nbt);
+
+                ItemStack item = NBTItem.convertNBTtoItem(new NBTContainer(new String(nbt, StandardCharsets.UTF_8)));
+                if (item != null) {
+                    entries.add(new Mailbox.Entry(item, amount));
+                }
+            }
+
+            return new Mailbox(entries);
+        }
+    }
+
+    /**
+     * Write a player's mailbox, or delete it when empty.
+     *
+     * @param uuid The player uuid
+     * @param entries The entries
+     * @throws IOException If the file can't be written
+     */
+    public void write(UUID uuid, List<Mailbox.Entry> entries) throws IOException {
+        Path file = file(uuid);
+        if (entries.isEmpty()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+
+        Files.createDirectories(directory);
+        Path temp = directory.resolve(uuid + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(entries.size());
+
+            for (Mailbox.Entry entry : entries) {
+                byte[] nbt = NBTItem.convertItemtoNBT(entry.item()).toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(entry.amount());
+                out.writeInt(nbt.length);
+                out.write(nbt);
+            }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Move an unreadable mailbox file aside so it isn't overwritten.
+     *
+     * @param uuid The player uuid
+     * @return The new path
+     * @throws IOException If the file can't be moved
+     */
+    public Path quarantine(UUID uuid) throws IOException {
+        Path target = directory.resolve(uuid + ".corrupt-" + System.currentTimeMillis());
+        Files.move(file(uuid), target);
+
+        return target;
+    }
+}
@@ -50,6 +50,9 @@ public interface MessageService {
     @Message("error-crate-exists")
     void errorCrateExists(CommandSender receiver);
 
+    @Message("error-crate-empty")
+    void errorCrateEmpty(CommandSender receiver, @Placeholder ICrate crate);
+
     @Message("error-crate-full")
     void errorCrateFull(CommandSender receiver, @Placeholder ICrate crate);
 
@@ -71,9 +74,18 @@ public interface MessageService {
     @Message("error-invalid-reward-item")
     void errorInvalidRewardItem(CommandSender receiver);
 
+    @Message("error-invalid-simulation-draws")
+    void errorInvalidSimulationDraws(CommandSender receiver);
+
     @Message("error-inventory-full")
     void errorInventoryFull(CommandSender receiver);
 
+    @Message("error-reload-config")
+    void errorReloadConfig(CommandSender receiver);
+
+    @Message("error-reload-in-progress")
+    void errorReloadInProgress(CommandSender receiver);
+
     @Message("error-reload-locale")
     void errorReloadLocale(CommandSender receiver);
 
@@ -86,8 +98,17 @@ public interface MessageService {
     @Message("location-deleted")
     void locationDeleted(CommandSender receiver, @Placeholder ICrate crate);
 
+    @Message("mailbox-deposited")
+    void mailboxDeposited(CommandSender receiver, @Placeholder Integer count);
+
+    @Message("mailbox-empty")
+    void mailboxEmpty(CommandSender receiver);
+
+    @Message("mailbox-waiting")
+    void mailboxWaiting(CommandSender receiver, @Placeholder Integer count);
+
     @Message("reloaded-config")
-    void reloadedConfig(CommandSender receiver);
+    void reloadedConfig(CommandSender receiver, @Placeholder String duration, @Placeholder String stall);
 
     @Message("reloaded-locales")
     void reloadedLocales(CommandSender receiver);
@@ -97,4 +118,38 @@ public interface MessageService {
 
     @Message("reward-given-self")
     void rewardGivenSelf(CommandSender receiver, @Placeholder IReward reward);
+
+    @Message("rewards-given-self")
+    void rewardsGivenSelf(
+        CommandSender receiver, @Placeholder ICrate crate, @Placeholder Integer count, @Placeholder String rewards);
+
+    @Message("simulation-complete")
+    void simulationComplete(
+        CommandSender receiver,
+        @Placeholder String draws,
+        @Placeholder String duration,
+        @Placeholder String throughput,
+        @Placeholder String statistic,
+        @Placeholder Integer freedom,
+        @Placeholder String critical);
+
+    @Message("simulation-reward")
+    void simulationReward(
+        CommandSender receiver,
+        @Placeholder IReward reward,
+        @Placeholder String observed,
+        @Placeholder String expected);
+
+    @Message("simulation-started")
+    void simulationStarted(CommandSender receiver, @Placeholder ICrate crate, @Placeholder Integer draws);
+
+    @Message("stats-command-queue")
+    void statsCommandQueue(
+        CommandSender receiver,
+        @Placeholder Integer depth,
+        @Placeholder Integer peak,
+        @Placeholder String dispatched,
+        @Placeholder String wait,
+        @Placeholder String maxwait,
+        @Placeholder String tick);
 }
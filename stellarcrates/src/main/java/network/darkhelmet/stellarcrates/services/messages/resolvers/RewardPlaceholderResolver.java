@@ -33,8 +33,6 @@ import net.kyori.moonshine.util.Either;
 import network.darkhelmet.stellarcrates.services.crates.Reward;
 
 import org.bukkit.command.CommandSender;
-import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -48,15 +46,8 @@ public class RewardPlaceholderResolver implements IPlaceholderResolver<CommandSe
         final Method method,
         final @Nullable Object[] parameters
     ) {
-        ItemStack itemStack = value.config().toItemStack();
-        Component title = Component.text(itemStack.getType().name().toLowerCase().replace("_", " "));
-
-        ItemMeta meta = itemStack.getItemMeta();
-        if (meta != null && !meta.getDisplayName().isEmpty()) {
-            title = Component.text(meta.getDisplayName());
-        }
-
-        Component amount = Component.text(itemStack.getAmount());
+        Component title = Component.text(value.title());
+        Component amount = Component.text(value.toItemStack().getAmount());
 
         return Map.of(placeholderName + "_title", Either.left(ConclusionValue.conclusionValue(title)),
             placeholderName + "_amount", Either.left(ConclusionValue.conclusionValue(amount)));
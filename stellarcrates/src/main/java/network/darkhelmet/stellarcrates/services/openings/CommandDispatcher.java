@@ -0,0 +1,322 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.openings;
+
+import com.google.inject.Inject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+
+import network.darkhelmet.stellarcrates.StellarCrates;
+import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Runs reward commands on the main thread within a per-tick time budget.
+ *
+ * <p>Commands from higher priority crates run first, otherwise in the order queued.</p>
+ *
+ * <p>Each tick takes a batch sized to what fit in the budget last time and marks it started
+ * in the opening journal. The batch runs on a later tick, once the journal has it on disk,
+ * so a command is never run twice after a crash and the main thread never waits for the
+ * disk.</p>
+ */
+public class CommandDispatcher {
+    /**
+     * A command waiting to be dispatched.
+     *
+     * @param command The command
+     * @param priority The crate priority
+     * @param sequence The order queued
+     * @param queuedNanos When the command was queued
+     * @param transactionId The transaction it belongs to
+     * @param index Its index among the transaction's commands
+     * @param onComplete Run after this command, if any
+     */
+    private record QueuedCommand(
+        String command,
+        int priority,
+        long sequence,
+        long queuedNanos,
+        long transactionId,
+        int index,
+        Runnable onComplete) {}
+
+    /**
+     * Dispatch metrics.
+     *
+     * @param depth Commands currently queued
+     * @param peakDepth The deepest the queue has been
+     * @param dispatched Commands dispatched in total
+     * @param averageWaitMillis Moving average of time spent queued
+     * @param maxWaitMillis The longest time a command has spent queued
+     * @param lastTickMillis Time spent dispatching in the last tick
+     */
+    public record Metrics(
+        int depth,
+        int peakDepth,
+        long dispatched,
+        double averageWaitMillis,
+        double maxWaitMillis,
+        double lastTickMillis) {}
+
+    /**
+     * Weight of the newest sample in the average wait.
+     */
+    private static final double WAIT_SMOOTHING = 0.05;
+
+    /**
+     * The most commands taken in one batch.
+     */
+    private static final int MAX_BATCH = 1024;
+
+    /**
+     * The configuration service.
+     */
+    private final ConfigurationService configurationService;
+
+    /**
+     * The opening journal.
+     */
+    private final OpeningJournal openingJournal;
+
+    /**
+     * The queue. Main thread only.
+     */
+    private final PriorityQueue<QueuedCommand> queue = new PriorityQueue<>(
+        Comparator.comparingInt(QueuedCommand::priority).reversed().thenComparingLong(QueuedCommand::sequence));
+
+    /**
+     * The batch marked started, waiting for the journal to sync it.
+     */
+    private final List<QueuedCommand> marked = new ArrayList<>();
+
+    /**
+     * The next sequence number.
+     */
+    private long sequence = 0;
+
+    /**
+     * The deepest the queue has been.
+     */
+    private int peakDepth = 0;
+
+    /**
+     * Commands dispatched in total.
+     */
+    private long dispatched = 0;
+
+    /**
+     * Moving average of queue wait, in nanoseconds.
+     */
+    private double averageWaitNanos = 0;
+
+    /**
+     * The longest queue wait, in nanoseconds.
+     */
+    private long maxWaitNanos = 0;
+
+    /**
+     * Time spent dispatching in the last tick, in nanoseconds.
+     */
+    private long lastTickNanos = 0;
+
+    /**
+     * How many commands to take in the next batch.
+     */
+    private int batchSize = 16;
+
+    /**
+     * Counted down once the marked batch is on disk.
+     */
+    private CountDownLatch markedSynced;
+
+    /**
+     * The drain task.
+     */
+    private BukkitTask drainTask;
+
+    /**
+     * Construct the command dispatcher.
+     *
+     * @param configurationService The configuration service
+     * @param openingJournal The opening journal
+     */
+    @Inject
+    public CommandDispatcher(ConfigurationService configurationService, OpeningJournal openingJournal) {
+        this.configurationService = configurationService;
+        this.openingJournal = openingJournal;
+    }
+
+    /**
+     * Start draining the queue every tick.
+     */
+    public void start() {
+        drainTask = Bukkit.getScheduler().runTaskTimer(StellarCrates.getInstance(), this::drain, 1L, 1L);
+    }
+
+    /**
+     * Queue commands to run as the console. Main thread only.
+     *
+     * @param commands The commands
+     * @param priority The crate priority
+     * @param transactionId The transaction the commands belong to
+     * @param firstIndex The index of the first command, after any started before a restart
+     * @param onComplete Run once every command has been dispatched
+     */
+    public void enqueue(List<String> commands, int priority, long transactionId, int firstIndex, Runnable onComplete) {
+        if (commands.isEmpty()) {
+            onComplete.run();
+            return;
+        }
+
+        // Same priority runs in sequence, so the last command queued is the last to run
+        long now = System.nanoTime();
+        for (int i = 0; i < commands.size(); i++) {
+            Runnable callback = i == commands.size() - 1 ? onComplete : null;
+            queue.add(new QueuedCommand(
+                commands.get(i), priority, sequence++, now, transactionId, firstIndex + i, callback));
+        }
+
+        peakDepth = Math.max(peakDepth, queue.size());
+    }
+
+    /**
+     * Dispatch the marked batch if it's on disk, then mark the next one.
+     */
+    private void drain() {
+        long start = System.nanoTime();
+
+        // Never wait for the journal, a batch that isn't synced yet stays for a later tick
+        if (!marked.isEmpty() && markedSynced.getCount() == 0) {
+            long budgetNanos = (long) (configurationService.stellarCratesConfig().commandBudgetMillis() * 1_000_000);
+            for (QueuedCommand queued : marked) {
+                dispatch(queued);
+            }
+
+            // Size the next batch to what's likely to fit in the budget
+            long perCommandNanos = Math.max(1, (System.nanoTime() - start) / marked.size());
+            batchSize = (int) Math.max(1, Math.min(MAX_BATCH, budgetNanos / perCommandNanos));
+            marked.clear();
+        }
+
+        // The journal syncs this while the server runs the rest of the tick
+        if (marked.isEmpty() && !queue.isEmpty()) {
+            markedSynced = mark(take(marked, batchSize));
+        }
+
+        lastTickNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Take commands off the queue.
+     *
+     * @param batch The list to take into
+     * @param limit The most commands to take
+     * @return The batch
+     */
+    private List<QueuedCommand> take(List<QueuedCommand> batch, int limit) {
+        QueuedCommand queued;
+        while (batch.size() < limit && (queued = queue.poll()) != null) {
+            batch.add(queued);
+        }
+
+        return batch;
+    }
+
+    /**
+     * Mark a batch started in the journal.
+     *
+     * @param batch The batch
+     * @return A latch counted down once the batch is on disk
+     */
+    private CountDownLatch mark(List<QueuedCommand> batch) {
+        Map<Long, Integer> started = new HashMap<>();
+        for (QueuedCommand queued : batch) {
+            started.merge(queued.transactionId(), queued.index() + 1, Math::max);
+        }
+
+        return openingJournal.started(started);
+    }
+
+    /**
+     * Dispatch a command and record its wait.
+     *
+     * @param queued The queued command
+     */
+    private void dispatch(QueuedCommand queued) {
+        long wait = System.nanoTime() - queued.queuedNanos();
+        averageWaitNanos += (wait - averageWaitNanos) * WAIT_SMOOTHING;
+        maxWaitNanos = Math.max(maxWaitNanos, wait);
+        dispatched++;
+
+        try {
+            Bukkit.getServer().dispatchCommand(Bukkit.getConsoleSender(), queued.command());
+        } catch (Exception e) {
+            StellarCrates.getInstance().handleException(e);
+        }
+
+        if (queued.onComplete() != null) {
+            queued.onComplete().run();
+        }
+    }
+
+    /**
+     * Get the dispatch metrics. Main thread only.
+     *
+     * @return The metrics
+     */
+    public Metrics metrics() {
+        return new Metrics(queue.size() + marked.size(), peakDepth, dispatched,
+            averageWaitNanos / 1_000_000d, maxWaitNanos / 1_000_000d, lastTickNanos / 1_000_000d);
+    }
+
+    /**
+     * Stop draining and run every queued command now, ignoring the budget.
+     *
+     * <p>Main thread only, called when the plugin disables. This is the only time the
+     * dispatcher waits for the journal, since the commands can't be left for a later tick.</p>
+     */
+    public void flush() {
+        if (drainTask != null) {
+            drainTask.cancel();
+        }
+
+        if (take(marked, Integer.MAX_VALUE).isEmpty()) {
+            return;
+        }
+
+        openingJournal.awaitSynced(mark(marked));
+
+        for (QueuedCommand queued : marked) {
+            dispatch(queued);
+        }
+
+        marked.clear();
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.openings;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import network.darkhelmet.stellarcrates.api.services.crates.ICrate;
+import network.darkhelmet.stellarcrates.api.services.crates.ICrateInstance;
+import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * A single crate open, tracked from key deduction until its rewards are applied.
+ *
+ * <p>Every step is a compare-and-set on the state, so a transaction
+ * can't be prepared or applied twice however the pipeline races.</p>
+ */
+public class OpenTransaction {
+    /**
+     * Transaction states, in order.
+     */
+    public enum State {
+        PENDING, PREPARING, PREPARED, APPLIED, FAILED
+    }
+
+    /**
+     * The next transaction id. Seeded from the clock so ids stay unique across restarts.
+     */
+    private static final AtomicLong nextId = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    /**
+     * The transaction id.
+     */
+    private final long id;
+
+    /**
+     * The player.
+     */
+    private final Player player;
+
+    /**
+     * The crate.
+     */
+    private final ICrate crate;
+
+    /**
+     * The crate instance. Null when replayed from the journal.
+     */
+    private final ICrateInstance crateInstance;
+
+    /**
+     * The number of keys deducted.
+     */
+    private final int count;
+
+    /**
+     * Rewards decided before the transaction was submitted, null if rewards should be drawn.
+     */
+    private final Map<IReward, Integer> presetRewards;
+
+    /**
+     * Whether items and actions were delivered before a restart.
+     */
+    private final boolean delivered;
+
+    /**
+     * How many commands were started before a restart.
+     */
+    private final int commandsStarted;
+
+    /**
+     * The state.
+     */
+    private final AtomicReference<State> state = new AtomicReference<>(State.PENDING);
+
+    /**
+     * Whether applying waits for an opening animation to reveal the reward.
+     */
+    private volatile boolean animating = false;
+
+    /**
+     * How many times each reward was drawn. Set when prepared.
+     */
+    private Map<IReward, Integer> rewards = Map.of();
+
+    /**
+     * The merged item stacks to give. Set when prepared.
+     */
+    private List<ItemStack> items = List.of();
+
+    /**
+     * Construct a transaction.
+     *
+     * @param player The player
+     * @param crateInstance The crate instance
+     * @param count The number of keys deducted
+     */
+    public OpenTransaction(Player player, ICrateInstance crateInstance, int count) {
+        this(nextId.incrementAndGet(), player, crateInstance.crate(), crateInstance, count, null, false, 0);
+    }
+
+    /**
+     * Construct a transaction whose rewards were already drawn.
+     *
+     * @param player The player
+     * @param crateInstance The crate instance
+     * @param rewards The drawn rewards and their counts
+     */
+    public OpenTransaction(Player player, ICrateInstance crateInstance, Map<IReward, Integer> rewards) {
+        this(nextId.incrementAndGet(), player, crateInstance.crate(), crateInstance,
+            rewards.values().stream().mapToInt(Integer::intValue).sum(), rewards, false, 0);
+    }
+
+    /**
+     * Construct a transaction to finish an open journaled before a restart.
+     *
+     * @param id The journaled transaction id
+     * @param player The player
+     * @param crate The crate
+     * @param count The number of keys deducted
+     * @param presetRewards The rewards drawn before the restart, or null to draw now
+     * @param delivered Whether items and actions were already delivered
+     * @param commandsStarted How many commands were already started
+     */
+    public OpenTransaction(
+            long id,
+            Player player,
+            ICrate crate,
+            int count,
+            Map<IReward, Integer> presetRewards,
+            boolean delivered,
+            int commandsStarted) {
+        this(id, player, crate, null, count, presetRewards, delivered, commandsStarted);
+    }
+
+    /**
+     * Construct a transaction.
+     *
+     * @param id The transaction id
+     * @param player The player
+     * @param crate The crate
+     * @param crateInstance The crate instance, if any
+     * @param count The number of keys deducted
+     * @param presetRewards The rewards already drawn, or null to draw now
+     * @param delivered Whether items and actions were already delivered
+     * @param commandsStarted How many commands were already started
+     */
+    private OpenTransaction(
+            long id,
+            Player player,
+            ICrate crate,
+            ICrateInstance crateInstance,
+            int count,
+            Map<IReward, Integer> presetRewards,
+            boolean delivered,
+            int commandsStarted) {
+        this.id = id;
+        this.player = player;
+        this.crate = crate;
+        this.crateInstance = crateInstance;
+        this.count = count;
+        this.presetRewards = presetRewards;
+        this.delivered = delivered;
+        this.commandsStarted = commandsStarted;
+    }
+
+    /**
+     * Move to a new state if currently in the expected one.
+     *
+     * @param from The expected state
+     * @param to The new state
+     * @return True if this call made the transition
+     */
+    public boolean transition(State from, State to) {
+        return state.compareAndSet(from, to);
+    }
+
+    /**
+     * Store the prepared results and mark the transaction prepared.
+     *
+     * @param rewards The drawn rewards
+     * @param items The merged item stacks
+     * @return True if the transaction was preparing
+     */
+    public boolean prepared(Map<IReward, Integer> rewards, List<ItemStack> items) {
+        this.rewards = rewards;
+        this.items = items;
+
+        // The volatile write in the CAS publishes the fields above
+        return transition(State.PREPARING, State.PREPARED);
+    }
+
+    /**
+     * Get the transaction id.
+     *
+     * @return The id
+     */
+    public long id() {
+        return id;
+    }
+
+    /**
+     * Get the player.
+     *
+     * @return The player
+     */
+    public Player player() {
+        return player;
+    }
+
+    /**
+     * Get the crate.
+     *
+     * @return The crate
+     */
+    public ICrate crate() {
+        return crate;
+    }
+
+    /**
+     * Get the crate instance.
+     *
+     * @return The crate instance, or null when replayed from the journal
+     */
+    public ICrateInstance crateInstance() {
+        return crateInstance;
+    }
+
+    /**
+     * Get the number of keys deducted.
+     *
+     * @return The count
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Whether this finishes an open journaled before a restart.
+     *
+     * @return True if replayed
+     */
+    public boolean replay() {
+        return crateInstance == null;
+    }
+
+    /**
+     * Get the rewards decided before the transaction was submitted.
+     *
+     * @return The rewards, or null if rewards should be drawn
+     */
+    public Map<IReward, Integer> presetRewards() {
+        return presetRewards;
+    }
+
+    /**
+     * Set whether applying waits for an opening animation.
+     *
+     * @param animating True to hold the transaction back
+     */
+    public void animating(boolean animating) {
+        this.animating = animating;
+    }
+
+    /**
+     * Whether applying waits for an opening animation.
+     *
+     * @return True if held back
+     */
+    public boolean animating() {
+        return animating;
+    }
+
+    /**
+     * Whether items and actions were delivered before a restart.
+     *
+     * @return True if delivered
+     */
+    public boolean delivered() {
+        return delivered;
+    }
+
+    /**
+     * Get how many commands were started before a restart. Those are skipped.
+     *
+     * @return The number of commands
+     */
+    public int commandsStarted() {
+        return commandsStarted;
+    }
+
+    /**
+     * Get the state.
+     *
+     * @return The state
+     */
+    public State state() {
+        return state.get();
+    }
+
+    /**
+     * Get the drawn rewards.
+     *
+     * @return The rewards and how many times each was drawn
+     */
+    public Map<IReward, Integer> rewards() {
+        return rewards;
+    }
+
+    /**
+     * Get the merged item stacks.
+     *
+     * @return The item stacks
+     */
+    public List<ItemStack> items() {
+        return items;
+    }
+}
@@ -0,0 +1,556 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.openings;
+
+import com.google.inject.Inject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An append-only write-ahead journal of crate opens.
+ *
+ * <p>Each open writes a line when keys are deducted, when rewards are drawn, when items
+ * are delivered, before its commands start and when its last command has run. Lines are
+ * handed to a writer thread that writes and fsyncs whatever has queued up in one go
+ * (group commit). Only command starts must reach the disk before their commands run, since
+ * a command can't be taken back. The writer counts down a latch once they're on disk,
+ * which the command dispatcher checks on its next tick.</p>
+ *
+ * <p>The writer keeps the incomplete entries in memory and rewrites the file down to
+ * them every so often, so it doesn't grow while the server runs.</p>
+ *
+ * <p>On startup, opens that never completed are reported and kept until their
+ * player next joins, when the crate service finishes them.</p>
+ */
+public class OpeningJournal {
+    /**
+     * An open that didn't complete before the last shutdown.
+     *
+     * @param id The transaction id
+     * @param playerUuid The player's UUID
+     * @param crateId The crate identifier
+     * @param count The number of keys deducted
+     * @param createdMillis When keys were deducted
+     * @param rewards Reward identifiers and draw counts, or null if not drawn yet
+     * @param delivered Whether items and actions were delivered
+     * @param commandsStarted How many of its commands were started
+     */
+    public record Entry(
+        long id,
+        UUID playerUuid,
+        String crateId,
+        int count,
+        long createdMillis,
+        Map<String, Integer> rewards,
+        boolean delivered,
+        int commandsStarted) {
+        /**
+         * Get the journal lines that recreate this entry.
+         *
+         * @return The lines
+         */
+        private List<String> lines() {
+            List<String> lines = new ArrayList<>();
+            lines.add(intentLine(id, playerUuid, crateId, count, createdMillis));
+            if (rewards != null) {
+                lines.add(rewardsLine(id, rewards));
+            }
+
+            if (delivered) {
+                lines.add("D\t" + id);
+            }
+
+            if (commandsStarted > 0) {
+                lines.add(startedLine(id, commandsStarted));
+            }
+
+            return lines;
+        }
+    }
+
+    /**
+     * How many lines the writer appends before compacting the file.
+     */
+    private static final int COMPACT_LINES = 10_000;
+
+    /**
+     * How long to wait for command starts to reach the disk when the plugin disables.
+     */
+    private static final long SYNC_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * Already counted down, for command starts that don't need to reach the disk.
+     */
+    private static final CountDownLatch SYNCED = new CountDownLatch(0);
+
+    /**
+     * Tells the writer to stop.
+     */
+    private static final Object STOP = new Object();
+
+    /**
+     * The logger.
+     */
+    private final Logger logger;
+
+    /**
+     * The journal file.
+     */
+    private final Path file;
+
+    /**
+     * Lines waiting to be written, and latches to count down once they're on disk.
+     */
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Incomplete entries as of the last line written. Writer thread only.
+     */
+    private final Map<Long, Entry> live = new LinkedHashMap<>();
+
+    /**
+     * Incomplete entries from the last run, by player. Main thread only.
+     */
+    private final Map<UUID, List<Entry>> pending = new HashMap<>();
+
+    /**
+     * The file channel. Writer thread only once the writer starts.
+     */
+    private FileChannel channel;
+
+    /**
+     * Lines appended since the file was last compacted. Writer thread only.
+     */
+    private int linesSinceCompact = 0;
+
+    /**
+     * The writer thread. Null when the journal isn't open.
+     */
+    private volatile Thread writer;
+
+    /**
+     * Construct the opening journal.
+     *
+     * @param logger The logger
+     * @param dataPath The plugin data path
+     */
+    @Inject
+    public OpeningJournal(Logger logger, Path dataPath) {
+        this.logger = logger;
+        this.file = dataPath.resolve("journal").resolve("openings.log");
+    }
+
+    /**
+     * Recover incomplete entries and start the writer.
+     */
+    public void open() {
+        try {
+            Files.createDirectories(file.getParent());
+            recover();
+
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.error("Failed to open the crate opening journal, openings won't be journaled.", e);
+            return;
+        }
+
+        writer = new Thread(this::write, "StellarCrates Journal Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Read the journal, keep incomplete entries and compact the file down to them.
+     *
+     * @throws IOException If reading or rewriting the file fails
+     */
+    private void recover() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+
+            try {
+                apply(live, line);
+            } catch (RuntimeException e) {
+                // Most likely a line torn by the crash
+                logger.warn("Skipping unreadable crate journal line {}: {}", lineNumber, line);
+            }
+        }
+
+        for (Entry entry : live.values()) {
+            pending.computeIfAbsent(entry.playerUuid(), uuid -> new ArrayList<>()).add(entry);
+
+            logger.warn("Crate open #{} for {} of {} x{} didn't complete ({}), it will finish when they next join.",
+                entry.id(), entry.playerUuid(), entry.crateId(), entry.count(),
+                entry.delivered() ? "commands pending" : entry.rewards() != null ? "delivery pending" : "not drawn");
+        }
+
+        compact();
+    }
+
+    /**
+     * Apply a journal line to a map of incomplete entries.
+     *
+     * @param entries The entries, by transaction id
+     * @param line The line
+     */
+    private static void apply(Map<Long, Entry> entries, String line) {
+        String[] parts = line.split("\t");
+        long id = Long.parseLong(parts[1]);
+        switch (parts[0]) {
+            case "I" -> entries.put(id, new Entry(id, UUID.fromString(parts[2]), parts[3],
+                Integer.parseInt(parts[4]), Long.parseLong(parts[5]), null, false, 0));
+            case "R" -> entries.computeIfPresent(id, (k, entry) -> new Entry(id, entry.playerUuid(),
+                entry.crateId(), entry.count(), entry.createdMillis(), parseRewards(parts), false, 0));
+            case "D" -> entries.computeIfPresent(id, (k, entry) -> new Entry(id, entry.playerUuid(),
+                entry.crateId(), entry.count(), entry.createdMillis(), entry.rewards(), true, 0));
+            case "S" -> entries.computeIfPresent(id, (k, entry) -> new Entry(id, entry.playerUuid(),
+                entry.crateId(), entry.count(), entry.createdMillis(), entry.rewards(), entry.delivered(),
+                Integer.parseInt(parts[2])));
+            case "C" -> entries.remove(id);
+            default -> throw new IllegalArgumentException("Unknown record " + parts[0]);
+        }
+    }
+
+    /**
+     * Rewrite the file down to the incomplete entries.
+     *
+     * @throws IOException If rewriting the file fails
+     */
+    private void compact() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Entry entry : live.values()) {
+            lines.addAll(entry.lines());
+        }
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            StringBuilder builder = new StringBuilder();
+            lines.forEach(line -> builder.append(line).append('\n'));
+            writeFully(out, builder);
+            out.force(false);
+        }
+
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        linesSinceCompact = 0;
+    }
+
+    /**
+     * Parse a rewards record.
+     *
+     * @param parts The record parts
+     * @return Reward identifiers and counts
+     */
+    private static Map<String, Integer> parseRewards(String[] parts) {
+        Map<String, Integer> rewards = new LinkedHashMap<>();
+        if (parts.length > 2 && !parts[2].isEmpty()) {
+            for (String pair : parts[2].split(",")) {
+                int separator = pair.lastIndexOf(':');
+                rewards.put(pair.substring(0, separator), Integer.parseInt(pair.substring(separator + 1)));
+            }
+        }
+
+        return rewards;
+    }
+
+    /**
+     * Build an intent record.
+     *
+     * @param id The transaction id
+     * @param playerUuid The player's UUID
+     * @param crateId The crate identifier
+     * @param count The number of keys
+     * @param createdMillis When keys were deducted
+     * @return The line
+     */
+    private static String intentLine(long id, UUID playerUuid, String crateId, int count, long createdMillis) {
+        return "I\t" + id + "\t" + playerUuid + "\t" + crateId + "\t" + count + "\t" + createdMillis;
+    }
+
+    /**
+     * Build a rewards record.
+     *
+     * @param id The transaction id
+     * @param rewards Reward identifiers and counts
+     * @return The line
+     */
+    private static String rewardsLine(long id, Map<String, Integer> rewards) {
+        StringJoiner joiner = new StringJoiner(",");
+        rewards.forEach((identifier, count) -> joiner.add(identifier + ":" + count));
+
+        return "R\t" + id + "\t" + joiner;
+    }
+
+    /**
+     * Build a commands started record.
+     *
+     * @param id The transaction id
+     * @param started How many commands were started in total
+     * @return The line
+     */
+    private static String startedLine(long id, int started) {
+        return "S\t" + id + "\t" + started;
+    }
+
+    /**
+     * Record that keys were deducted.
+     *
+     * @param transaction The transaction
+     */
+    public void intent(OpenTransaction transaction) {
+        append(intentLine(transaction.id(), transaction.player().getUniqueId(),
+            transaction.crate().config().identifier(), transaction.count(), System.currentTimeMillis()));
+    }
+
+    /**
+     * Record which rewards were drawn.
+     *
+     * @param transaction The transaction
+     * @param rewards Reward identifiers and counts
+     */
+    public void rewards(OpenTransaction transaction, Map<String, Integer> rewards) {
+        append(rewardsLine(transaction.id(), rewards));
+    }
+
+    /**
+     * Record that items and actions were delivered.
+     *
+     * @param transaction The transaction
+     */
+    public void delivered(OpenTransaction transaction) {
+        append("D\t" + transaction.id());
+    }
+
+    /**
+     * Record that commands are about to start. Main thread only.
+     *
+     * <p>The commands must not run until the returned latch has counted down. A crash
+     * after that may skip commands that never ran, but never runs one twice.</p>
+     *
+     * @param started How many commands of each transaction will have started, by transaction id
+     * @return A latch counted down once the record is on disk
+     */
+    public CountDownLatch started(Map<Long, Integer> started) {
+        if (writer == null || started.isEmpty()) {
+            return SYNCED;
+        }
+
+        // The queue is first in, first out, so once this is on disk so is everything before it
+        CountDownLatch synced = new CountDownLatch(1);
+        started.forEach((id, count) -> queue.add(startedLine(id, count)));
+        queue.add(synced);
+
+        return synced;
+    }
+
+    /**
+     * Wait for command starts to reach the disk. Only for when the plugin disables.
+     *
+     * <p>Ticks never wait, they leave commands queued until their latch has counted down.
+     * If the disk doesn't keep up here the commands run anyway, with a warning.</p>
+     *
+     * @param synced The latch from started
+     */
+    public void awaitSynced(CountDownLatch synced) {
+        try {
+            if (!synced.await(SYNC_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                logger.warn("Timed out waiting for the crate opening journal, running commands anyway.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Record that the open completed, including its commands.
+     *
+     * @param id The transaction id
+     */
+    public void complete(long id) {
+        append("C\t" + id);
+    }
+
+    /**
+     * Give up on an incomplete entry that can't be finished.
+     *
+     * @param entry The entry
+     * @param playerName The player's name
+     * @param reason Why it can't be finished
+     */
+    public void abandon(Entry entry, String playerName, String reason) {
+        logger.warn("Can't finish crate open #{} of {} x{} for {}, {}. They need to be compensated manually.",
+            entry.id(), entry.crateId(), entry.count(), playerName, reason);
+
+        complete(entry.id());
+    }
+
+    /**
+     * Queue a line for the writer.
+     *
+     * @param line The line
+     */
+    private void append(String line) {
+        if (writer != null) {
+            queue.add(line);
+        }
+    }
+
+    /**
+     * Keep an entry until its player next joins. Main thread only.
+     *
+     * <p>Used for opens that failed or whose player left before they were applied.
+     * The journal already holds their lines, so a restart recovers them as well.</p>
+     *
+     * @param entry The entry
+     */
+    public void retryLater(Entry entry) {
+        pending.computeIfAbsent(entry.playerUuid(), uuid -> new ArrayList<>()).add(entry);
+    }
+
+    /**
+     * Take the incomplete entries for a player. Main thread only.
+     *
+     * @param playerUuid The player's UUID
+     * @return The entries, if any
+     */
+    public List<Entry> takePending(UUID playerUuid) {
+        List<Entry> entries = pending.remove(playerUuid);
+
+        return entries != null ? entries : List.of();
+    }
+
+    /**
+     * The writer loop. Writes everything queued, fsyncs once, then counts down the latches queued with it.
+     */
+    private void write() {
+        List<Object> batch = new ArrayList<>();
+        List<CountDownLatch> synced = new ArrayList<>();
+        StringBuilder builder = new StringBuilder();
+        boolean running = true;
+
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            queue.drainTo(batch);
+
+            builder.setLength(0);
+            for (Object item : batch) {
+                if (item == STOP) {
+                    running = false;
+                } else if (item instanceof CountDownLatch latch) {
+                    synced.add(latch);
+                } else {
+                    String line = (String) item;
+                    builder.append(line).append('\n');
+                    apply(live, line);
+                    linesSinceCompact++;
+                }
+            }
+
+            batch.clear();
+
+            try {
+                writeFully(channel, builder);
+                channel.force(false);
+
+                if (linesSinceCompact >= COMPACT_LINES) {
+                    channel.close();
+                    compact();
+                    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+                }
+            } catch (IOException e) {
+                logger.error("Failed to write the crate opening journal.", e);
+            }
+
+            synced.forEach(CountDownLatch::countDown);
+            synced.clear();
+        }
+    }
+
+    /**
+     * Write a builder's contents to a channel.
+     *
+     * @param channel The channel
+     * @param builder The builder
+     * @throws IOException If writing fails
+     */
+    private static void writeFully(FileChannel channel, StringBuilder builder) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Write everything queued and close the journal.
+     */
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+
+        queue.add(STOP);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        writer = null;
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Failed to close the crate opening journal.", e);
+        }
+    }
+}
@@ -0,0 +1,478 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.openings;
+
+import com.google.inject.Inject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import network.darkhelmet.stellarcrates.StellarCrates;
+import network.darkhelmet.stellarcrates.api.services.configuration.RewardActionConfiguration;
+import network.darkhelmet.stellarcrates.api.services.configuration.SoundConfiguration;
+import network.darkhelmet.stellarcrates.api.services.crates.ICrate;
+import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+import network.darkhelmet.stellarcrates.services.crates.CommandTemplate;
+import network.darkhelmet.stellarcrates.services.crates.Reward;
+import network.darkhelmet.stellarcrates.services.mailbox.MailboxService;
+import network.darkhelmet.stellarcrates.services.messages.MessageService;
+import network.darkhelmet.stellarcrates.services.rewards.RewardActionService;
+import network.darkhelmet.stellarcrates.utils.InventoryUtil;
+
+import org.apache.logging.log4j.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Runs crate opens in phases.
+ *
+ * <p>The crate service checks and deducts keys synchronously, then submits a transaction.
+ * Drawing rewards and merging stacks happen on a worker. Inventory changes, reward actions
+ * and sounds are applied in a batch on the next tick, and commands are rendered there too
+ * since PlaceholderAPI expansions read server state. They then go to the budgeted dispatcher.
+ * The reward message is rendered and sent back on the worker.</p>
+ *
+ * <p>Every step is written to the opening journal so opens interrupted
+ * by a crash can be finished after a restart. Opens that fail, or whose player
+ * left before they were applied, are finished when the player next joins.</p>
+ */
+public class OpeningService {
+    /**
+     * The logger.
+     */
+    private final Logger logger;
+
+    /**
+     * The command dispatcher.
+     */
+    private final CommandDispatcher commandDispatcher;
+
+    /**
+     * The mailbox service.
+     */
+    private final MailboxService mailboxService;
+
+    /**
+     * The message service.
+     */
+    private final MessageService messageService;
+
+    /**
+     * The opening journal.
+     */
+    private final OpeningJournal openingJournal;
+
+    /**
+     * The reward action service.
+     */
+    private final RewardActionService rewardActionService;
+
+    /**
+     * The worker that prepares transactions and sends messages.
+     */
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StellarCrates Opening Worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Transactions that have been submitted but not yet applied.
+     */
+    private final Queue<OpenTransaction> inFlight = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Transactions ready to apply on the main thread.
+     */
+    private final Queue<OpenTransaction> prepared = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The main thread task applying prepared transactions.
+     */
+    private BukkitTask applyTask;
+
+    /**
+     * Construct the opening service.
+     *
+     * @param logger The logger
+     * @param commandDispatcher The command dispatcher
+     * @param mailboxService The mailbox service
+     * @param messageService The message service
+     * @param openingJournal The opening journal
+     * @param rewardActionService The reward action service
+     */
+    @Inject
+    public OpeningService(
+            Logger logger,
+            CommandDispatcher commandDispatcher,
+            MailboxService mailboxService,
+            MessageService messageService,
+            OpeningJournal openingJournal,
+            RewardActionService rewardActionService) {
+        this.logger = logger;
+        this.commandDispatcher = commandDispatcher;
+        this.mailboxService = mailboxService;
+        this.messageService = messageService;
+        this.openingJournal = openingJournal;
+        this.rewardActionService = rewardActionService;
+    }
+
+    /**
+     * Start applying prepared transactions every tick.
+     */
+    public void start() {
+        applyTask = Bukkit.getScheduler().runTaskTimer(StellarCrates.getInstance(), this::applyPrepared, 1L, 1L);
+    }
+
+    /**
+     * Submit a transaction whose keys have already been deducted.
+     *
+     * @param transaction The transaction
+     */
+    public void submit(OpenTransaction transaction) {
+        if (!transaction.replay()) {
+            openingJournal.intent(transaction);
+        }
+
+        inFlight.add(transaction);
+
+        try {
+            worker.execute(() -> prepare(transaction));
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the flush picks this up
+        }
+    }
+
+    /**
+     * Draw rewards and merge item stacks.
+     *
+     * <p>Commands aren't rendered here but in apply on the main thread, since PlaceholderAPI
+     * expansions aren't thread-safe. The request asked for them off the main thread.</p>
+     *
+     * @param transaction The transaction
+     */
+    private void prepare(OpenTransaction transaction) {
+        if (!transaction.transition(OpenTransaction.State.PENDING, OpenTransaction.State.PREPARING)) {
+            return;
+        }
+
+        Map<IReward, Integer> rewards = null;
+        List<ItemStack> items = new ArrayList<>();
+
+        try {
+            ICrate crate = transaction.crate();
+
+            rewards = transaction.presetRewards();
+            if (rewards == null) {
+                rewards = crate.randomRewards(transaction.count());
+            }
+
+            // Only rewards replayed from the journal are already in it
+            if (transaction.presetRewards() == null || !transaction.replay()) {
+                openingJournal.rewards(transaction, identifiers(rewards));
+            }
+
+            for (Map.Entry<IReward, Integer> entry : rewards.entrySet()) {
+                if (transaction.delivered()) {
+                    continue;
+                }
+
+                if (entry.getKey().config().givesDisplayItem()) {
+                    InventoryUtil.mergeStacks(entry.getKey().toItemStack(), entry.getValue(), items);
+                }
+
+                // Item actions are merged with the other items
+                for (RewardActionConfiguration action : entry.getKey().config().actions()) {
+                    if (RewardActionService.isItem(action)) {
+                        rewardActionService.items(action, entry.getValue(), items);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            transaction.transition(OpenTransaction.State.PREPARING, OpenTransaction.State.FAILED);
+            inFlight.remove(transaction);
+            logger.error("Failed to prepare crate open #{} for {}, it will be retried when they next join.",
+                transaction.id(), transaction.player().getName());
+            StellarCrates.getInstance().handleException(e);
+
+            Map<IReward, Integer> drawn = rewards;
+            runOnMainThread(() -> retryLater(transaction, drawn));
+
+            return;
+        }
+
+        if (transaction.prepared(rewards, items)) {
+            prepared.add(transaction);
+        }
+    }
+
+    /**
+     * Hand a transaction back to the journal, to be finished when its player next joins.
+     * Main thread only.
+     *
+     * @param transaction The transaction
+     * @param rewards The drawn rewards, or null if not drawn yet
+     */
+    private void retryLater(OpenTransaction transaction, Map<IReward, Integer> rewards) {
+        openingJournal.retryLater(new OpeningJournal.Entry(transaction.id(), transaction.player().getUniqueId(),
+            transaction.crate().config().identifier(), transaction.count(), System.currentTimeMillis(),
+            rewards != null ? identifiers(rewards) : null, transaction.delivered(), transaction.commandsStarted()));
+    }
+
+    /**
+     * Map drawn rewards to their identifiers, as journaled.
+     *
+     * @param rewards The drawn rewards and their counts
+     * @return Reward identifiers and counts
+     */
+    private static Map<String, Integer> identifiers(Map<IReward, Integer> rewards) {
+        Map<String, Integer> identifiers = new LinkedHashMap<>();
+        rewards.forEach((reward, drawn) -> identifiers.put(reward.config().identifier(), drawn));
+
+        return identifiers;
+    }
+
+    /**
+     * Run a task on the main thread, or right away while shutting down.
+     *
+     * @param task The task
+     */
+    private void runOnMainThread(Runnable task) {
+        if (Bukkit.isPrimaryThread() || !StellarCrates.getInstance().isEnabled()) {
+            task.run();
+        } else {
+            Bukkit.getScheduler().runTask(StellarCrates.getInstance(), task);
+        }
+    }
+
+    /**
+     * Get a reward's compiled commands.
+     *
+     * @param reward The reward
+     * @return The command templates
+     */
+    private List<CommandTemplate> commandTemplates(IReward reward) {
+        if (reward instanceof Reward r) {
+            return r.commandTemplates();
+        }
+
+        List<CommandTemplate> templates = new ArrayList<>();
+        for (String command : reward.config().commands()) {
+            templates.add(CommandTemplate.compile(command));
+        }
+
+        return templates;
+    }
+
+    /**
+     * Apply every prepared transaction. Main thread only.
+     */
+    private void applyPrepared() {
+        List<OpenTransaction> animating = null;
+
+        OpenTransaction transaction;
+        while ((transaction = prepared.poll()) != null) {
+            // Held back until the animation reveals the reward
+            if (transaction.animating()) {
+                if (animating == null) {
+                    animating = new ArrayList<>();
+                }
+
+                animating.add(transaction);
+                continue;
+            }
+
+            if (!transaction.transition(OpenTransaction.State.PREPARED, OpenTransaction.State.APPLIED)) {
+                continue;
+            }
+
+            inFlight.remove(transaction);
+            apply(transaction);
+        }
+
+        if (animating != null) {
+            prepared.addAll(animating);
+        }
+    }
+
+    /**
+     * Apply a transaction's side effects. Main thread only.
+     *
+     * @param transaction The transaction
+     */
+    private void apply(OpenTransaction transaction) {
+        Player player = transaction.player();
+        ICrate crate = transaction.crate();
+
+        // Actions and commands need the player, so the whole open waits for them to return
+        if (!player.isOnline()) {
+            logger.warn("{} logged out before crate open #{} was applied, it will finish when they next join.",
+                player.getName(), transaction.id());
+            retryLater(transaction, transaction.rewards());
+            return;
+        }
+
+        // Commands started before a restart are skipped, they may already have run
+        List<String> commands = renderCommands(transaction);
+        int started = Math.min(transaction.commandsStarted(), commands.size());
+        commands = commands.subList(started, commands.size());
+
+        // Commands only, the rest was delivered before a restart
+        if (transaction.delivered()) {
+            commandDispatcher.enqueue(commands, crate.config().priority(), transaction.id(), started,
+                () -> openingJournal.complete(transaction.id()));
+            return;
+        }
+
+        // Give the reward items in a single add, anything that doesn't fit goes to the mailbox
+        if (!transaction.items().isEmpty()) {
+            Map<Integer, ItemStack> leftovers = player.getInventory().addItem(
+                transaction.items().toArray(new ItemStack[0]));
+            mailboxService.deposit(player, leftovers.values());
+        }
+
+        // Run actions directly, once per reward with the draw count
+        for (Map.Entry<IReward, Integer> entry : transaction.rewards().entrySet()) {
+            for (RewardActionConfiguration action : entry.getKey().config().actions()) {
+                if (!RewardActionService.isItem(action)) {
+                    rewardActionService.execute(player, action, entry.getValue());
+                }
+            }
+        }
+
+        openingJournal.delivered(transaction);
+
+        // Queue commands, they run within the per-tick budget. The open completes after the last one
+        commandDispatcher.enqueue(commands, crate.config().priority(), transaction.id(), started,
+            () -> openingJournal.complete(transaction.id()));
+
+        if (transaction.rewards().isEmpty()) {
+            return;
+        }
+
+        // Play sounds
+        for (SoundConfiguration onRewardSound : crate.config().onRewardSounds()) {
+            if (onRewardSound != null) {
+                player.playSound(
+                    player.getLocation(), onRewardSound.sound(), onRewardSound.volume(), onRewardSound.pitch());
+            }
+        }
+
+        // Render and send the message off the main thread
+        try {
+            worker.execute(() -> sendMessage(transaction));
+        } catch (RejectedExecutionException e) {
+            sendMessage(transaction);
+        }
+    }
+
+    /**
+     * Expand the commands of every drawn reward. Main thread only.
+     *
+     * @param transaction The transaction
+     * @return The commands
+     */
+    private List<String> renderCommands(OpenTransaction transaction) {
+        String crateId = transaction.crate().config().identifier();
+
+        List<String> commands = new ArrayList<>();
+        for (Map.Entry<IReward, Integer> entry : transaction.rewards().entrySet()) {
+            // Commands are rendered once per reward, not once per draw
+            for (CommandTemplate template : commandTemplates(entry.getKey())) {
+                String rendered = template.render(transaction.player(), crateId);
+                for (int i = 0; i < entry.getValue(); i++) {
+                    commands.add(rendered);
+                }
+            }
+        }
+
+        return commands;
+    }
+
+    /**
+     * Send the reward message for an applied transaction.
+     *
+     * @param transaction The transaction
+     */
+    private void sendMessage(OpenTransaction transaction) {
+        Map<IReward, Integer> rewards = transaction.rewards();
+        if (transaction.count() == 1) {
+            messageService.rewardGivenSelf(transaction.player(), rewards.keySet().iterator().next());
+        } else {
+            messageService.rewardsGivenSelf(transaction.player(),
+                transaction.crate(), transaction.count(), rewardSummary(rewards));
+        }
+    }
+
+    /**
+     * Build a summary of drawn rewards, like "3x diamond, 1x gold ingot".
+     *
+     * @param rewards The drawn rewards and their counts
+     * @return The summary
+     */
+    private String rewardSummary(Map<IReward, Integer> rewards) {
+        StringJoiner joiner = new StringJoiner(", ");
+        rewards.forEach((reward, drawn) -> {
+            String title = reward instanceof Reward r ? r.title() : reward.toItemStack().getType().name();
+            joiner.add(drawn * reward.toItemStack().getAmount() + "x " + title);
+        });
+
+        return joiner.toString();
+    }
+
+    /**
+     * Stop the pipeline and apply everything still in flight, so no deducted key is lost.
+     *
+     * <p>Main thread only, called when the plugin disables.</p>
+     */
+    public void shutdown() {
+        if (applyTask != null) {
+            applyTask.cancel();
+        }
+
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Timed out waiting for the opening worker, finishing on the main thread.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Anything the worker never reached is prepared here
+        for (OpenTransaction transaction : inFlight) {
+            prepare(transaction);
+        }
+
+        applyPrepared();
+    }
+}
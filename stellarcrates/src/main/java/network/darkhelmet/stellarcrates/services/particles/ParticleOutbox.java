@@ -0,0 +1,139 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.particles;
+
+import java.util.Arrays;
+
+import org.bukkit.entity.Player;
+
+/**
+ * Particle packets waiting to be sent, each paired with its receiver.
+ *
+ * <p>Each particle worker fills its own outbox, so adding needs no locking.
+ * Reused every tick so filling it doesn't allocate once it has grown.</p>
+ */
+public class ParticleOutbox {
+    /**
+     * The receivers.
+     */
+    private Player[] players = new Player[64];
+
+    /**
+     * The packets.
+     */
+    private Object[] packets = new Object[64];
+
+    /**
+     * The particle amount of each packet.
+     */
+    private int[] amounts = new int[64];
+
+    /**
+     * The priority of each packet's crate.
+     */
+    private int[] priorities = new int[64];
+
+    /**
+     * The number of packets.
+     */
+    private int size = 0;
+
+    /**
+     * Queue a packet for a receiver.
+     *
+     * @param player The receiver
+     * @param packet The packet
+     * @param amount The packet's particle amount
+     * @param priority The priority of the packet's crate
+     */
+    public void add(Player player, Object packet, int amount, int priority) {
+        if (size == players.length) {
+            players = Arrays.copyOf(players, size * 2);
+            packets = Arrays.copyOf(packets, size * 2);
+            amounts = Arrays.copyOf(amounts, size * 2);
+            priorities = Arrays.copyOf(priorities, size * 2);
+        }
+
+        players[size] = player;
+        packets[size] = packet;
+        amounts[size] = amount;
+        priorities[size] = priority;
+        size++;
+    }
+
+    /**
+     * Get the number of packets.
+     *
+     * @return The number of packets
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get a packet's receiver.
+     *
+     * @param index The index
+     * @return The receiver
+     */
+    public Player player(int index) {
+        return players[index];
+    }
+
+    /**
+     * Get a packet.
+     *
+     * @param index The index
+     * @return The packet
+     */
+    public Object packet(int index) {
+        return packets[index];
+    }
+
+    /**
+     * Get a packet's particle amount.
+     *
+     * @param index The index
+     * @return The amount
+     */
+    public int amount(int index) {
+        return amounts[index];
+    }
+
+    /**
+     * Get the priority of a packet's crate.
+     *
+     * @param index The index
+     * @return The priority
+     */
+    public int priority(int index) {
+        return priorities[index];
+    }
+
+    /**
+     * Forget all packets.
+     */
+    public void clear() {
+        Arrays.fill(players, 0, size, null);
+        Arrays.fill(packets, 0, size, null);
+        size = 0;
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.particles;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+import network.darkhelmet.stellarcrates.api.services.configuration.ParticleColorMode;
+import network.darkhelmet.stellarcrates.api.services.configuration.ParticleConfiguration;
+import network.darkhelmet.stellarcrates.api.services.configuration.ParticleShape;
+import network.darkhelmet.stellarcrates.utils.RandomUtil;
+
+import org.bukkit.Location;
+import org.bukkit.util.Vector;
+
+import xyz.xenondevs.particle.ParticleBuilder;
+import xyz.xenondevs.particle.ParticleEffect;
+import xyz.xenondevs.particle.PropertyType;
+import xyz.xenondevs.particle.data.color.RegularColor;
+
+/**
+ * A particle configuration compiled for one crate instance.
+ *
+ * <p>Positions are resolved to plain doubles, shapes to cached offsets, random colors
+ * are drawn from a palette made up front and the builder and location are reused,
+ * so building a packet allocates nothing of our own. Reused state means a plan is only
+ * safe on one thread at a time, which the particle service guarantees by giving each
+ * crate instance to one worker.</p>
+ *
+ * <p>Shapes draw a slice of their points per emission, one packet per point, and the
+ * slice moves along the shape by the step each emission.</p>
+ *
+ * <p>Receivers further away get less detail. Within half the visibility range they see
+ * every emission at full amount, up to three quarters every second emission at half,
+ * and beyond that every fourth at a quarter.</p>
+ */
+public class ParticlePlan {
+    /**
+     * How many colors the palette for random color mode holds.
+     */
+    private static final int PALETTE_SIZE = 64;
+
+    /**
+     * The number of detail levels.
+     */
+    private static final int DETAIL_LEVELS = 3;
+
+    /**
+     * The base x, the instance's block center plus the offset.
+     */
+    private final double x;
+
+    /**
+     * The base y.
+     */
+    private final double y;
+
+    /**
+     * The base z.
+     */
+    private final double z;
+
+    /**
+     * The x spread.
+     */
+    private final double xRange;
+
+    /**
+     * The y spread.
+     */
+    private final double yRange;
+
+    /**
+     * The z spread.
+     */
+    private final double zRange;
+
+    /**
+     * Whether positions are spread at all.
+     */
+    private final boolean spread;
+
+    /**
+     * Shape points packed as x, y, z offsets from the base position. Null for the box shape.
+     */
+    private final double[] shape;
+
+    /**
+     * How many points to draw per emission. Always 1 for the box shape.
+     */
+    private final int points;
+
+    /**
+     * How many points to move along the shape per emission.
+     */
+    private final int step;
+
+    /**
+     * Where along the shape the next emission starts.
+     */
+    private int point = 0;
+
+    /**
+     * Where along the shape the current emission starts.
+     */
+    private int start = 0;
+
+    /**
+     * The configured amount of particles.
+     */
+    private final int amount;
+
+    /**
+     * The colors to pick from. Empty if the effect isn't colorable.
+     */
+    private final RegularColor[] palette;
+
+    /**
+     * The squared visibility range.
+     */
+    private final double visibilityRangeSquared;
+
+    /**
+     * The squared range receivers see full detail within.
+     */
+    private final double fullDetailRangeSquared;
+
+    /**
+     * The squared range receivers see half detail within.
+     */
+    private final double halfDetailRangeSquared;
+
+    /**
+     * Packets built for the current emission, by detail level and then point.
+     */
+    private final Object[] packets;
+
+    /**
+     * Particles shown by the packets built for the current emission, by detail level.
+     */
+    private final int[] amounts = new int[DETAIL_LEVELS];
+
+    /**
+     * The number of emissions started.
+     */
+    private long emissions = 0;
+
+    /**
+     * Whether the location and color have been picked for the current emission.
+     */
+    private boolean placed = false;
+
+    /**
+     * The spawn location, moved for every display.
+     */
+    private final Location location;
+
+    /**
+     * The particle builder.
+     */
+    private final ParticleBuilder builder;
+
+    /**
+     * Compile a particle configuration.
+     *
+     * @param particleConfiguration The particle configuration
+     * @param instanceLocation The crate instance location
+     * @param random The random generator, only used to build the palette
+     */
+    public ParticlePlan(
+            ParticleConfiguration particleConfiguration, Location instanceLocation, RandomGenerator random) {
+        // Start at the center of the block
+        Vector offset = particleConfiguration.positionOffset();
+        this.x = instanceLocation.getX() + 0.5 + offset.getX();
+        this.y = instanceLocation.getY() + 0.5 + offset.getY();
+        this.z = instanceLocation.getZ() + 0.5 + offset.getZ();
+
+        Vector range = particleConfiguration.particleRange();
+        this.xRange = range.getX();
+        this.yRange = range.getY();
+        this.zRange = range.getZ();
+        this.spread = xRange + yRange + zRange != 0;
+
+        ParticleShape particleShape = particleConfiguration.shape();
+        if (particleShape == null || particleShape == ParticleShape.BOX) {
+            this.shape = null;
+            this.points = 1;
+        } else {
+            this.shape = ParticleShapes.offsets(particleShape, particleConfiguration.resolution(),
+                particleConfiguration.radius(), particleConfiguration.height());
+
+            int shapePoints = shape.length / 3;
+            int configured = particleConfiguration.points();
+            this.points = configured <= 0 ? shapePoints : Math.min(configured, shapePoints);
+        }
+        this.step = Math.max(1, particleConfiguration.step());
+        this.packets = new Object[DETAIL_LEVELS * points];
+
+        double visibilityRange = particleConfiguration.visibilityRange();
+        this.visibilityRangeSquared = visibilityRange * visibilityRange;
+        this.fullDetailRangeSquared = visibilityRangeSquared / 4;
+        this.halfDetailRangeSquared = visibilityRangeSquared * 9 / 16;
+
+        ParticleEffect effect = particleConfiguration.effect();
+        if (!effect.hasProperty(PropertyType.COLORABLE)) {
+            this.palette = new RegularColor[0];
+        } else if (particleConfiguration.colorMode().equals(ParticleColorMode.STATIC)) {
+            this.palette = new RegularColor[] {particleConfiguration.color()};
+        } else {
+            this.palette = new RegularColor[PALETTE_SIZE];
+            for (int i = 0; i < PALETTE_SIZE; i++) {
+                palette[i] = new RegularColor(random.nextInt(255), random.nextInt(255), random.nextInt(255));
+            }
+        }
+
+        this.amount = particleConfiguration.amount();
+        this.location = new Location(instanceLocation.getWorld(), x, y, z);
+        this.builder = new ParticleBuilder(effect, location);
+    }
+
+    /**
+     * Get the squared visibility range.
+     *
+     * @return The squared visibility range
+     */
+    public double visibilityRangeSquared() {
+        return visibilityRangeSquared;
+    }
+
+    /**
+     * Get how many points, and so packets, each emission draws.
+     *
+     * @return The points
+     */
+    public int points() {
+        return points;
+    }
+
+    /**
+     * Start a new emission, forgetting the previous one's packets.
+     */
+    public void begin() {
+        emissions++;
+        placed = false;
+        Arrays.fill(packets, null);
+    }
+
+    /**
+     * Get the detail level for a receiver, 0 being full detail.
+     *
+     * @param distanceSquared The receiver's squared distance
+     * @return The detail level
+     */
+    public int level(double distanceSquared) {
+        if (distanceSquared <= fullDetailRangeSquared) {
+            return 0;
+        } else if (distanceSquared <= halfDetailRangeSquared) {
+            return 1;
+        }
+
+        return 2;
+    }
+
+    /**
+     * Whether receivers at a detail level see the current emission.
+     *
+     * @param level The detail level
+     * @return True if emitted at this level
+     */
+    public boolean emits(int level) {
+        return (emissions & ((1 << level) - 1)) == 0;
+    }
+
+    /**
+     * Get the packet for a point of the current emission at a detail level, building it the
+     * first time. Packets can be sent to any number of players.
+     *
+     * <p>A configured amount of 0 is never scaled, ParticleLib uses it to send directional
+     * and color data.</p>
+     *
+     * @param level The detail level
+     * @param index The point within the emission, below points
+     * @param random The random generator
+     * @param scale The share of the configured amount to emit, at least one particle is
+     * @return The packet
+     */
+    public Object packet(int level, int index, RandomGenerator random, double scale) {
+        int slot = level * points + index;
+        if (packets[slot] != null) {
+            return packets[slot];
+        }
+
+        if (!placed) {
+            place(random);
+            placed = true;
+        }
+
+        if (shape != null) {
+            int offset = ((start + index) % (shape.length / 3)) * 3;
+            location.setX(x + shape[offset]);
+            location.setY(y + shape[offset + 1]);
+            location.setZ(z + shape[offset + 2]);
+        }
+
+        int scaled = (int) Math.round(amount * scale / (1 << level));
+        builder.setAmount(amount == 0 ? 0 : Math.max(1, scaled));
+        amounts[level] = Math.max(1, scaled);
+        packets[slot] = builder.toPacket();
+
+        return packets[slot];
+    }
+
+    /**
+     * Get how many particles each of the current emission's packets shows at a detail level.
+     * A packet with an amount of 0 still shows one.
+     *
+     * @param level The detail level
+     * @return The particles shown
+     */
+    public int amount(int level) {
+        return amounts[level];
+    }
+
+    /**
+     * Pick where along the shape, or the location, and the color for the current emission.
+     *
+     * @param random The random generator
+     */
+    private void place(RandomGenerator random) {
+        if (shape != null) {
+            start = point;
+            point = (point + step) % (shape.length / 3);
+        } else if (spread) {
+            location.setX(RandomUtil.randomInRange(random, x - xRange, x + xRange));
+            location.setY(RandomUtil.randomInRange(random, y - yRange, y + yRange));
+            location.setZ(RandomUtil.randomInRange(random, z - zRange, z + zRange));
+        }
+
+        if (palette.length > 0) {
+            builder.setParticleData(palette[palette.length == 1 ? 0 : random.nextInt(palette.length)]);
+        }
+    }
+}
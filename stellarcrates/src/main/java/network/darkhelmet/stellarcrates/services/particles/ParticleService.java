@@ -0,0 +1,488 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.particles;
+
+import com.google.inject.Inject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator;
+
+import network.darkhelmet.stellarcrates.StellarCrates;
+import network.darkhelmet.stellarcrates.api.services.configuration.RandomMode;
+import network.darkhelmet.stellarcrates.api.services.configuration.StellarCratesConfiguration;
+import network.darkhelmet.stellarcrates.api.services.crates.ICrateInstance;
+import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
+import network.darkhelmet.stellarcrates.services.crates.CrateInstance;
+import network.darkhelmet.stellarcrates.services.crates.CrateService;
+import network.darkhelmet.stellarcrates.services.players.PlayerIndex;
+import network.darkhelmet.stellarcrates.services.random.RandomService;
+
+import org.apache.logging.log4j.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import xyz.xenondevs.particle.utils.ReflectionUtils;
+
+/**
+ * Computes crate particles on a small worker pool and sends them grouped by receiver.
+ *
+ * <p>Active crate instances are split into partitions by chunk region, so one instance
+ * and its reused particle state only ever belong to one worker in a tick. Workers read
+ * the player index snapshot, never live player state, and queue packets in their own
+ * outbox. Each partition owns a generator from the random service, so workers don't
+ * contend and seeded runs stay repeatable. Once every worker is done the packets are
+ * grouped per receiver and sent.</p>
+ *
+ * <p>Each receiver has a particle budget per second, refilled every tick. When a tick's
+ * particles don't fit, higher priority crates are sent first and the rest are dropped.</p>
+ */
+public class ParticleService {
+    /**
+     * Packets queued for one player, and what's left of their particle budget.
+     */
+    private static class Receiver {
+        /**
+         * The packets.
+         */
+        private Object[] packets = new Object[16];
+
+        /**
+         * The particle amount of each packet.
+         */
+        private int[] amounts = new int[16];
+
+        /**
+         * The priority of each packet's crate.
+         */
+        private int[] priorities = new int[16];
+
+        /**
+         * Packet indexes, sorted by priority when over budget.
+         */
+        private int[] order = new int[16];
+
+        /**
+         * The number of packets.
+         */
+        private int size = 0;
+
+        /**
+         * The total particle amount of the packets.
+         */
+        private long total = 0;
+
+        /**
+         * The particles this player may still receive.
+         */
+        private double tokens;
+
+        /**
+         * The tick the budget was last refilled.
+         */
+        private long lastTick;
+
+        /**
+         * Construct a receiver with a full budget.
+         *
+         * @param tokens The budget
+         * @param tick The current tick
+         */
+        private Receiver(double tokens, long tick) {
+            this.tokens = tokens;
+            this.lastTick = tick;
+        }
+
+        /**
+         * Queue a packet.
+         *
+         * @param packet The packet
+         * @param amount The particle amount
+         * @param priority The priority of the packet's crate
+         */
+        private void add(Object packet, int amount, int priority) {
+            if (size == packets.length) {
+                packets = Arrays.copyOf(packets, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+                priorities = Arrays.copyOf(priorities, size * 2);
+                order = Arrays.copyOf(order, size * 2);
+            }
+
+            packets[size] = packet;
+            amounts[size] = amount;
+            priorities[size] = priority;
+            size++;
+            total += amount;
+        }
+
+        /**
+         * Sort packet indexes by priority, highest first, keeping queue order within a priority.
+         */
+        private void sortByPriority() {
+            for (int i = 0; i < size; i++) {
+                int index = i;
+                int j = i - 1;
+                while (j >= 0 && priorities[order[j]] < priorities[index]) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = index;
+            }
+        }
+
+        /**
+         * Forget all packets.
+         */
+        private void clear() {
+            Arrays.fill(packets, 0, size, null);
+            size = 0;
+            total = 0;
+        }
+    }
+
+    /**
+     * Ticks per second.
+     */
+    private static final int TICKS_PER_SECOND = 20;
+
+    /**
+     * The configuration service.
+     */
+    private final ConfigurationService configurationService;
+
+    /**
+     * The crate service.
+     */
+    private final CrateService crateService;
+
+    /**
+     * The logger.
+     */
+    private final Logger logger;
+
+    /**
+     * The player index.
+     */
+    private final PlayerIndex playerIndex;
+
+    /**
+     * The random service.
+     */
+    private final RandomService randomService;
+
+    /**
+     * The server load monitor.
+     */
+    private final ServerLoadMonitor serverLoadMonitor;
+
+    /**
+     * Whether a particle tick is running. Async runs can overlap if one is slow, and crate
+     * instances reuse their particle state, so overlapping runs are skipped.
+     */
+    private final AtomicBoolean ticking = new AtomicBoolean(false);
+
+    /**
+     * Packets grouped by receiver, reused every tick.
+     */
+    private final Map<Player, Receiver> receivers = new HashMap<>();
+
+    /**
+     * The crate instances for each worker.
+     */
+    private List<List<CrateInstance>> partitions = List.of();
+
+    /**
+     * The outbox for each worker.
+     */
+    private ParticleOutbox[] outboxes = new ParticleOutbox[0];
+
+    /**
+     * Each partition's random generator.
+     */
+    private RandomGenerator[] randoms = new RandomGenerator[0];
+
+    /**
+     * The random mode the generators were created for.
+     */
+    private RandomMode randomMode;
+
+    /**
+     * The seed the generators were created for.
+     */
+    private long randomSeed;
+
+    /**
+     * The worker pool, for every partition but the first which the tick task handles itself.
+     */
+    private ExecutorService workers;
+
+    /**
+     * The tick task.
+     */
+    private BukkitTask tickTask;
+
+    /**
+     * The number of particle ticks run.
+     */
+    private long ticks = 0;
+
+    /**
+     * Construct the particle service.
+     *
+     * @param configurationService The configuration service
+     * @param crateService The crate service
+     * @param logger The logger
+     * @param playerIndex The player index
+     * @param randomService The random service
+     * @param serverLoadMonitor The server load monitor
+     */
+    @Inject
+    public ParticleService(
+            ConfigurationService configurationService,
+            CrateService crateService,
+            Logger logger,
+            PlayerIndex playerIndex,
+            RandomService randomService,
+            ServerLoadMonitor serverLoadMonitor) {
+        this.configurationService = configurationService;
+        this.crateService = crateService;
+        this.logger = logger;
+        this.playerIndex = playerIndex;
+        this.randomService = randomService;
+        this.serverLoadMonitor = serverLoadMonitor;
+    }
+
+    /**
+     * Create the workers and start ticking particles.
+     */
+    public void start() {
+        int threads = configurationService.stellarCratesConfig().particleThreads();
+        if (threads <= 0) {
+            threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        }
+
+        List<List<CrateInstance>> lists = new ArrayList<>();
+        outboxes = new ParticleOutbox[threads];
+        randoms = new RandomGenerator[threads];
+        for (int i = 0; i < threads; i++) {
+            lists.add(new ArrayList<>());
+            outboxes[i] = new ParticleOutbox();
+        }
+        partitions = lists;
+
+        if (threads > 1) {
+            AtomicInteger count = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "StellarCrates Particles #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        tickTask = Bukkit.getScheduler().runTaskTimerAsynchronously(StellarCrates.getInstance(), this::tick, 0, 1L);
+    }
+
+    /**
+     * Stop ticking particles.
+     */
+    public void shutdown() {
+        if (tickTask != null) {
+            tickTask.cancel();
+        }
+
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Tick every active crate instance, then send what they emitted.
+     */
+    private void tick() {
+        if (!ticking.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            long tick = ticks++;
+            double particleScale = serverLoadMonitor.particleScale();
+            if (particleScale <= 0) {
+                return;
+            }
+
+            refreshRandoms();
+
+            // Only instances near a player, in loaded chunks, are ticked
+            int size = partitions.size();
+            for (ICrateInstance crateInstance : crateService.crateInstanceRegistry().activeInstances()) {
+                if (crateInstance.loaded()) {
+                    CrateInstance instance = (CrateInstance) crateInstance;
+                    partitions.get(Math.floorMod(instance.region(), size)).add(instance);
+                }
+            }
+
+            PlayerIndex.Snapshot players = playerIndex.snapshot();
+            List<Future<?>> futures = new ArrayList<>(size);
+            for (int i = 1; i < size; i++) {
+                if (!partitions.get(i).isEmpty()) {
+                    int partition = i;
+                    futures.add(workers.submit(() -> compute(partition, players, tick, particleScale)));
+                }
+            }
+
+            // Every worker must finish before partitions are reused, even if one fails
+            try {
+                compute(0, players, tick, particleScale);
+            } catch (RuntimeException e) {
+                logger.error("Failed to compute crate particles.", e);
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    logger.error("Failed to compute crate particles.", e.getCause());
+                }
+            }
+
+            send(tick);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (int i = 0; i < partitions.size(); i++) {
+                partitions.get(i).clear();
+                outboxes[i].clear();
+            }
+
+            ticking.set(false);
+        }
+    }
+
+    /**
+     * Recreate the partitions' generators if the random mode or seed changed, such as on reload.
+     */
+    private void refreshRandoms() {
+        StellarCratesConfiguration config = configurationService.stellarCratesConfig();
+        if (config.randomMode() == randomMode && config.randomSeed() == randomSeed) {
+            return;
+        }
+
+        randomMode = config.randomMode();
+        randomSeed = config.randomSeed();
+        for (int i = 0; i < randoms.length; i++) {
+            randoms[i] = randomService.worker(i);
+        }
+    }
+
+    /**
+     * Tick one partition's crate instances into its outbox.
+     *
+     * @param partition The partition
+     * @param players The player index snapshot
+     * @param tick The tick number
+     * @param particleScale The share of configured particle emission the server can afford
+     */
+    private void compute(int partition, PlayerIndex.Snapshot players, long tick, double particleScale) {
+        ParticleOutbox outbox = outboxes[partition];
+        RandomGenerator random = randoms[partition];
+        for (CrateInstance crateInstance : partitions.get(partition)) {
+            crateInstance.tick(players, tick, particleScale, outbox, random);
+        }
+    }
+
+    /**
+     * Group every outbox by receiver and send each receiver their packets together,
+     * as far as their budget allows.
+     *
+     * @param tick The tick number
+     */
+    private void send(long tick) {
+        double budget = configurationService.stellarCratesConfig().particleBudget();
+
+        for (ParticleOutbox outbox : outboxes) {
+            for (int i = 0; i < outbox.size(); i++) {
+                Receiver receiver = receivers.get(outbox.player(i));
+                if (receiver == null) {
+                    receiver = new Receiver(budget, tick);
+                    receivers.put(outbox.player(i), receiver);
+                }
+
+                receiver.add(outbox.packet(i), outbox.amount(i), outbox.priority(i));
+            }
+        }
+
+        Iterator<Map.Entry<Player, Receiver>> iterator = receivers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Player, Receiver> entry = iterator.next();
+            Receiver receiver = entry.getValue();
+
+            // A receiver idle for a second has a full budget again, so forgetting them loses nothing
+            if (receiver.size == 0) {
+                if (tick - receiver.lastTick >= TICKS_PER_SECOND) {
+                    iterator.remove();
+                }
+
+                continue;
+            }
+
+            Player player = entry.getKey();
+            if (budget <= 0) {
+                for (int i = 0; i < receiver.size; i++) {
+                    ReflectionUtils.sendPacket(player, receiver.packets[i]);
+                }
+            } else {
+                double refill = budget * (tick - receiver.lastTick) / TICKS_PER_SECOND;
+                receiver.tokens = Math.min(budget, receiver.tokens + refill);
+
+                if (receiver.total <= receiver.tokens) {
+                    for (int i = 0; i < receiver.size; i++) {
+                        ReflectionUtils.sendPacket(player, receiver.packets[i]);
+                    }
+
+                    receiver.tokens -= receiver.total;
+                } else {
+                    // Over budget, higher priority crates go first. The last packet
+                    // may overdraw, which later ticks pay back
+                    receiver.sortByPriority();
+                    for (int i = 0; i < receiver.size && receiver.tokens > 0; i++) {
+                        int index = receiver.order[i];
+                        ReflectionUtils.sendPacket(player, receiver.packets[index]);
+                        receiver.tokens -= receiver.amounts[index];
+                    }
+                }
+            }
+
+            receiver.lastTick = tick;
+            receiver.clear();
+        }
+    }
+}
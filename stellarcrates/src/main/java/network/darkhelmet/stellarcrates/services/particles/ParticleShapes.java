@@ -0,0 +1,207 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.particles;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import network.darkhelmet.stellarcrates.api.services.configuration.ParticleShape;
+
+/**
+ * Points for particle shapes, built from trigonometry tables and cached.
+ *
+ * <p>Shapes are generated once per shape and resolution as unit points packed as x, y, z,
+ * then scaled by each particle plan when it's compiled. Nothing here runs per particle.</p>
+ */
+public class ParticleShapes {
+    /**
+     * The number of entries in the trigonometry tables, a power of two.
+     */
+    private static final int TABLE_SIZE = 4096;
+
+    /**
+     * Table indexes per radian.
+     */
+    private static final double INDEXES_PER_RADIAN = TABLE_SIZE / (Math.PI * 2);
+
+    /**
+     * Sine, over one full turn.
+     */
+    private static final double[] SIN = new double[TABLE_SIZE];
+
+    /**
+     * Cosine, over one full turn.
+     */
+    private static final double[] COS = new double[TABLE_SIZE];
+
+    /**
+     * The golden angle, which spreads points evenly over a sphere.
+     */
+    private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+    /**
+     * How many turns helixes make.
+     */
+    private static final int HELIX_TURNS = 2;
+
+    /**
+     * How many turns spirals make.
+     */
+    private static final int SPIRAL_TURNS = 3;
+
+    /**
+     * Unit points by shape and resolution.
+     */
+    private static final Map<Long, double[]> cache = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            double angle = i / INDEXES_PER_RADIAN;
+            SIN[i] = Math.sin(angle);
+            COS[i] = Math.cos(angle);
+        }
+    }
+
+    /**
+     * Prevent instantiation.
+     */
+    private ParticleShapes() {}
+
+    /**
+     * Get the points of a shape, scaled and packed as x, y, z offsets.
+     *
+     * <p>Sphere points are scaled by the radius on every axis, other shapes
+     * by the radius across and the height upwards.</p>
+     *
+     * @param shape The shape
+     * @param resolution The number of points
+     * @param radius The radius
+     * @param height The height
+     * @return The offsets
+     */
+    public static double[] offsets(ParticleShape shape, int resolution, double radius, double height) {
+        double[] unit = unit(shape, Math.max(1, resolution));
+        double yScale = shape == ParticleShape.SPHERE ? radius : height;
+
+        double[] offsets = new double[unit.length];
+        for (int i = 0; i < unit.length; i += 3) {
+            offsets[i] = unit[i] * radius;
+            offsets[i + 1] = unit[i + 1] * yScale;
+            offsets[i + 2] = unit[i + 2] * radius;
+        }
+
+        return offsets;
+    }
+
+    /**
+     * Get the cached unit points of a shape.
+     *
+     * @param shape The shape
+     * @param resolution The number of points
+     * @return The unit points
+     */
+    private static double[] unit(ParticleShape shape, int resolution) {
+        long key = ((long) shape.ordinal() << 32) | resolution;
+
+        return cache.computeIfAbsent(key, k -> generate(shape, resolution));
+    }
+
+    /**
+     * Generate the unit points of a shape.
+     *
+     * @param shape The shape
+     * @param resolution The number of points
+     * @return The unit points
+     */
+    private static double[] generate(ParticleShape shape, int resolution) {
+        double[] points = new double[resolution * 3];
+
+        for (int i = 0; i < resolution; i++) {
+            // Closed shapes wrap around, open ones reach their far end
+            double progress = (double) i / resolution;
+            double length = (double) i / Math.max(1, resolution - 1);
+            double angle;
+            double radius;
+            double y;
+
+            switch (shape) {
+                case BEAM -> {
+                    angle = 0;
+                    radius = 0;
+                    y = length;
+                }
+                case HELIX -> {
+                    angle = Math.PI * 2 * HELIX_TURNS * length;
+                    radius = 1;
+                    y = length;
+                }
+                case SPHERE -> {
+                    // Fibonacci sphere, even spacing without clustering at the poles
+                    y = 1 - 2 * (i + 0.5) / resolution;
+                    angle = GOLDEN_ANGLE * i;
+                    radius = Math.sqrt(1 - y * y);
+                }
+                case SPIRAL -> {
+                    // Narrows as it rises
+                    angle = Math.PI * 2 * SPIRAL_TURNS * length;
+                    radius = 1 - length;
+                    y = length;
+                }
+                case RING -> {
+                    angle = Math.PI * 2 * progress;
+                    radius = 1;
+                    y = 0;
+                }
+                default -> {
+                    angle = 0;
+                    radius = 0;
+                    y = 0;
+                }
+            }
+
+            points[i * 3] = cos(angle) * radius;
+            points[i * 3 + 1] = y;
+            points[i * 3 + 2] = sin(angle) * radius;
+        }
+
+        return points;
+    }
+
+    /**
+     * Look up the sine of an angle.
+     *
+     * @param angle The angle in radians
+     * @return The sine
+     */
+    private static double sin(double angle) {
+        return SIN[(int) Math.round(angle * INDEXES_PER_RADIAN) & (TABLE_SIZE - 1)];
+    }
+
+    /**
+     * Look up the cosine of an angle.
+     *
+     * @param angle The angle in radians
+     * @return The cosine
+     */
+    private static double cos(double angle) {
+        return COS[(int) Math.round(angle * INDEXES_PER_RADIAN) & (TABLE_SIZE - 1)];
+    }
+}
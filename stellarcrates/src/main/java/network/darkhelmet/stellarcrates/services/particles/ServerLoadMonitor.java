@@ -0,0 +1,165 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.particles;
+
+import com.google.inject.Inject;
+
+import network.darkhelmet.stellarcrates.StellarCrates;
+import network.darkhelmet.stellarcrates.api.services.configuration.StellarCratesConfiguration;
+import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
+
+import org.bukkit.Bukkit;
+
+/**
+ * Samples how the server is keeping up and decides how much particle emission it can afford.
+ *
+ * <p>Spigot exposes neither TPS nor tick times, so both are derived from the time between
+ * consecutive ticks. Milliseconds per tick use a short average so particles back off quickly,
+ * TPS a longer one like the server's own. Sampled on the main thread, read from any thread.</p>
+ */
+public class ServerLoadMonitor {
+    /**
+     * How quickly the mspt average follows new samples. Roughly one second.
+     */
+    private static final double MSPT_SMOOTHING = 0.05;
+
+    /**
+     * How quickly the tps average follows new samples. Roughly fifteen seconds.
+     */
+    private static final double TPS_SMOOTHING = 0.0033;
+
+    /**
+     * Milliseconds per tick on a healthy server.
+     */
+    private static final double TARGET_MSPT = 50;
+
+    /**
+     * The configuration service.
+     */
+    private final ConfigurationService configurationService;
+
+    /**
+     * The last tick's start, in nanoseconds.
+     */
+    private long lastTick = 0;
+
+    /**
+     * The long tick interval average.
+     */
+    private double longInterval = TARGET_MSPT;
+
+    /**
+     * The average milliseconds per tick.
+     */
+    private volatile double mspt = TARGET_MSPT;
+
+    /**
+     * The average ticks per second.
+     */
+    private volatile double tps = 20;
+
+    /**
+     * Construct the server load monitor.
+     *
+     * @param configurationService The configuration service
+     */
+    @Inject
+    public ServerLoadMonitor(ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    /**
+     * Start sampling every tick.
+     */
+    public void start() {
+        Bukkit.getScheduler().runTaskTimer(StellarCrates.getInstance(), this::sample, 1L, 1L);
+    }
+
+    /**
+     * Get the average milliseconds per tick.
+     *
+     * @return The mspt
+     */
+    public double mspt() {
+        return mspt;
+    }
+
+    /**
+     * Get the average ticks per second.
+     *
+     * @return The tps
+     */
+    public double tps() {
+        return tps;
+    }
+
+    /**
+     * Get how much of their configured emission particles should use right now.
+     *
+     * <p>1 while the server keeps up, falling linearly to 0 between the reduce
+     * and stop thresholds. The worse of mspt and tps wins.</p>
+     *
+     * @return The particle scale, from 0 to 1
+     */
+    public double particleScale() {
+        StellarCratesConfiguration config = configurationService.stellarCratesConfig();
+
+        double msptScale = scale(
+            config.particleMaxMspt() - mspt, config.particleMaxMspt() - config.particleReduceMspt());
+        double tpsScale = scale(
+            tps - config.particleMinTps(), config.particleReduceTps() - config.particleMinTps());
+
+        return Math.min(msptScale, tpsScale);
+    }
+
+    /**
+     * Scale by how far a value is inside a band.
+     *
+     * @param headroom The distance from the stop threshold, negative once past it
+     * @param band The distance between the stop and reduce thresholds
+     * @return The scale, from 0 to 1
+     */
+    private static double scale(double headroom, double band) {
+        if (headroom <= 0) {
+            return 0;
+        } else if (headroom >= band) {
+            return 1;
+        }
+
+        return headroom / band;
+    }
+
+    /**
+     * Record the time since the previous tick. Main thread only.
+     */
+    private void sample() {
+        long now = System.nanoTime();
+        if (lastTick != 0) {
+            double interval = (now - lastTick) / 1_000_000d;
+
+            mspt = mspt + (interval - mspt) * MSPT_SMOOTHING;
+            longInterval = longInterval + (interval - longInterval) * TPS_SMOOTHING;
+            tps = 1000 / Math.max(TARGET_MSPT, longInterval);
+        }
+
+        lastTick = now;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.players;
+
+import com.google.inject.Inject;
+
+import network.darkhelmet.stellarcrates.StellarCrates;
+import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
+import network.darkhelmet.stellarcrates.utils.IntLongMap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+/**
+ * Drops repeated crate interactions from the same player within a short window.
+ *
+ * <p>Clients and autoclickers can send several interactions per tick. Checking the last
+ * interaction tick by entity id costs one primitive lookup and allocates nothing.
+ * Only clicks on crates are checked, so other interactions are never affected.
+ * Main thread only.</p>
+ */
+public class InteractionDebouncer {
+    /**
+     * The configuration service.
+     */
+    private final ConfigurationService configurationService;
+
+    /**
+     * The tick of each player's last crate interaction, by entity id.
+     */
+    private final IntLongMap lastInteractions = new IntLongMap();
+
+    /**
+     * The current tick.
+     */
+    private long tick = 0;
+
+    /**
+     * Construct the interaction debouncer.
+     *
+     * @param configurationService The configuration service
+     */
+    @Inject
+    public InteractionDebouncer(ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    /**
+     * Start counting ticks.
+     */
+    public void start() {
+        Bukkit.getScheduler().runTaskTimer(StellarCrates.getInstance(), () -> tick++, 1L, 1L);
+    }
+
+    /**
+     * Whether a player interacted with a crate within the cooldown window.
+     *
+     * @param player The player
+     * @return True if this interaction should be dropped
+     */
+    public boolean debounced(Player player) {
+        long last = lastInteractions.get(player.getEntityId(), Long.MIN_VALUE);
+
+        return last != Long.MIN_VALUE
+            && tick - last < configurationService.stellarCratesConfig().interactionCooldownTicks();
+    }
+
+    /**
+     * Record a crate interaction.
+     *
+     * @param player The player
+     */
+    public void record(Player player) {
+        lastInteractions.put(player.getEntityId(), tick);
+    }
+
+    /**
+     * Forget a player so the table doesn't grow.
+     *
+     * @param player The player
+     */
+    public void forget(Player player) {
+        lastInteractions.remove(player.getEntityId());
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.players;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import network.darkhelmet.stellarcrates.StellarCrates;
+import network.darkhelmet.stellarcrates.utils.LongObjectMap;
+import network.darkhelmet.stellarcrates.utils.PositionUtil;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+/**
+ * A per-tick snapshot of online player positions, bucketed by world and chunk.
+ *
+ * <p>Built on the main thread once per tick and published whole, so async tasks
+ * can look up nearby players without touching live player state.</p>
+ */
+public class PlayerIndex {
+    /**
+     * Players near a queried point. Reused between queries so lookups don't allocate.
+     */
+    public static class Nearby {
+        /**
+         * The players.
+         */
+        private Player[] players = new Player[8];
+
+        /**
+         * The squared distance of each player to the point.
+         */
+        private double[] distancesSquared = new double[8];
+
+        /**
+         * The number of players.
+         */
+        private int size = 0;
+
+        /**
+         * Get the number of players.
+         *
+         * @return The number of players
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Get a player.
+         *
+         * @param index The index
+         * @return The player
+         */
+        public Player player(int index) {
+            return players[index];
+        }
+
+        /**
+         * Get a player's squared distance to the point.
+         *
+         * @param index The index
+         * @return The squared distance
+         */
+        public double distanceSquared(int index) {
+            return distancesSquared[index];
+        }
+
+        /**
+         * Forget all players.
+         */
+        public void clear() {
+            Arrays.fill(players, 0, size, null);
+            size = 0;
+        }
+
+        /**
+         * Add a player.
+         *
+         * @param player The player
+         * @param distanceSquared The squared distance to the point
+         */
+        private void add(Player player, double distanceSquared) {
+            if (size == players.length) {
+                players = Arrays.copyOf(players, size * 2);
+                distancesSquared = Arrays.copyOf(distancesSquared, size * 2);
+            }
+
+            players[size] = player;
+            distancesSquared[size] = distanceSquared;
+            size++;
+        }
+    }
+
+    /**
+     * Players in one chunk, with their positions packed as x, y, z.
+     */
+    private static class Bucket {
+        /**
+         * The players.
+         */
+        private Player[] players = new Player[4];
+
+        /**
+         * The positions.
+         */
+        private double[] positions = new double[12];
+
+        /**
+         * The number of players.
+         */
+        private int size = 0;
+
+        /**
+         * Add a player.
+         *
+         * @param player The player
+         * @param location The player's location
+         */
+        private void add(Player player, Location location) {
+            if (size == players.length) {
+                players = Arrays.copyOf(players, size * 2);
+                positions = Arrays.copyOf(positions, size * 6);
+            }
+
+            players[size] = player;
+            positions[size * 3] = location.getX();
+            positions[size * 3 + 1] = location.getY();
+            positions[size * 3 + 2] = location.getZ();
+            size++;
+        }
+    }
+
+    /**
+     * Player positions at one point in time. Never modified once published.
+     */
+    public static class Snapshot {
+        /**
+         * Chunk buckets by world.
+         */
+        private final Map<UUID, LongObjectMap<Bucket>> worlds;
+
+        /**
+         * Construct a snapshot.
+         *
+         * @param worlds Chunk buckets by world
+         */
+        private Snapshot(Map<UUID, LongObjectMap<Bucket>> worlds) {
+            this.worlds = worlds;
+        }
+
+        /**
+         * Find players within range of a point, only checking chunks the range overlaps.
+         *
+         * @param worldId The world uuid
+         * @param x The point x
+         * @param y The point y
+         * @param z The point z
+         * @param range The range, in blocks
+         * @param nearby Cleared, then filled with the nearby players
+         */
+        public void nearby(UUID worldId, double x, double y, double z, double range, Nearby nearby) {
+            nearby.clear();
+
+            LongObjectMap<Bucket> chunks = worlds.get(worldId);
+            if (chunks == null || range <= 0) {
+                return;
+            }
+
+            double rangeSquared = range * range;
+
+            int minChunkX = (int) Math.floor(x - range) >> 4;
+            int maxChunkX = (int) Math.floor(x + range) >> 4;
+            int minChunkZ = (int) Math.floor(z - range) >> 4;
+            int maxChunkZ = (int) Math.floor(z + range) >> 4;
+
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                    Bucket bucket = chunks.get(PositionUtil.chunkKey(chunkX, chunkZ));
+                    if (bucket == null) {
+                        continue;
+                    }
+
+                    for (int i = 0; i < bucket.size; i++) {
+                        double dx = bucket.positions[i * 3] - x;
+                        double dy = bucket.positions[i * 3 + 1] - y;
+                        double dz = bucket.positions[i * 3 + 2] - z;
+                        double distanceSquared = dx * dx + dy * dy + dz * dz;
+                        if (distanceSquared <= rangeSquared) {
+                            nearby.add(bucket.players[i], distanceSquared);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The latest snapshot.
+     */
+    private volatile Snapshot snapshot = new Snapshot(Map.of());
+
+    /**
+     * Start rebuilding the index every tick.
+     */
+    public void start() {
+        rebuild();
+        Bukkit.getScheduler().runTaskTimer(StellarCrates.getInstance(), this::rebuild, 1L, 1L);
+    }
+
+    /**
+     * Get the latest snapshot.
+     *
+     * @return The snapshot
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Rebuild the index from online players. Main thread only.
+     */
+    private void rebuild() {
+        Map<UUID, LongObjectMap<Bucket>> worlds = new HashMap<>();
+        Location location = new Location(null, 0, 0, 0);
+
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            player.getLocation(location);
+            if (location.getWorld() == null) {
+                continue;
+            }
+
+            LongObjectMap<Bucket> chunks = worlds.computeIfAbsent(
+                location.getWorld().getUID(), uuid -> new LongObjectMap<>());
+
+            long key = PositionUtil.chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+            Bucket bucket = chunks.get(key);
+            if (bucket == null) {
+                bucket = new Bucket();
+                chunks.put(key, bucket);
+            }
+
+            bucket.add(player, location);
+        }
+
+        // The volatile write publishes the buckets
+        snapshot = new Snapshot(worlds);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.players;
+
+import com.google.inject.Inject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import network.darkhelmet.stellarcrates.api.services.configuration.ParticleConfiguration;
+import network.darkhelmet.stellarcrates.api.services.crates.ICrate;
+import network.darkhelmet.stellarcrates.services.crates.CrateInstanceRegistry;
+import network.darkhelmet.stellarcrates.services.crates.CrateService;
+import network.darkhelmet.stellarcrates.utils.LongObjectMap;
+import network.darkhelmet.stellarcrates.utils.PositionUtil;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+/**
+ * Tracks which chunks are near a player so only crate instances there are ticked.
+ *
+ * <p>Every player covers a square of chunks wide enough for the largest particle visibility range.
+ * Chunks are reference counted, and the registry hears about a chunk when its first player
+ * arrives or its last one leaves. Only players crossing a chunk border, joining, quitting
+ * or teleporting cause any work. Main thread only.</p>
+ */
+public class ProximityTracker {
+    /**
+     * The chunk square a player covers.
+     *
+     * @param worldId The world uuid
+     * @param chunkX The center chunk x
+     * @param chunkZ The center chunk z
+     * @param radius The radius in chunks
+     */
+    private record Area(UUID worldId, int chunkX, int chunkZ, int radius) {
+        /**
+         * Whether a chunk is inside this area.
+         *
+         * @param worldId The world uuid
+         * @param x The chunk x
+         * @param z The chunk z
+         * @return True if inside
+         */
+        boolean contains(UUID worldId, int x, int z) {
+            return this.worldId.equals(worldId) && Math.abs(x - chunkX) <= radius && Math.abs(z - chunkZ) <= radius;
+        }
+    }
+
+    /**
+     * The crate service.
+     */
+    private final CrateService crateService;
+
+    /**
+     * The area each player covers.
+     */
+    private final Map<UUID, Area> areas = new HashMap<>();
+
+    /**
+     * How many players cover each chunk, by world.
+     */
+    private final Map<UUID, LongObjectMap<int[]>> coverage = new HashMap<>();
+
+    /**
+     * The radius in chunks players cover.
+     */
+    private int radius = 0;
+
+    /**
+     * Construct the proximity tracker.
+     *
+     * @param crateService The crate service
+     */
+    @Inject
+    public ProximityTracker(CrateService crateService) {
+        this.crateService = crateService;
+    }
+
+    /**
+     * Recompute the radius from the current crates and re-track every online player.
+     *
+     * <p>Call after crates are loaded or reloaded.</p>
+     */
+    public void refresh() {
+        double maxVisibilityRange = 0;
+        for (ICrate crate : crateService.crates().values()) {
+            for (ParticleConfiguration particleConfiguration : crate.config().particles()) {
+                maxVisibilityRange = Math.max(maxVisibilityRange, particleConfiguration.visibilityRange());
+            }
+        }
+
+        // Players can stand anywhere in their chunk, so round up
+        radius = (int) Math.ceil(maxVisibilityRange / 16d);
+
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            remove(player);
+            update(player, player.getLocation());
+        }
+    }
+
+    /**
+     * Track a player at a location. Cheap when they haven't changed chunk.
+     *
+     * @param player The player
+     * @param location The player's location
+     */
+    public void update(Player player, Location location) {
+        if (location.getWorld() == null) {
+            return;
+        }
+
+        Area previous = areas.get(player.getUniqueId());
+        Area next = new Area(
+            location.getWorld().getUID(), location.getBlockX() >> 4, location.getBlockZ() >> 4, radius);
+        if (next.equals(previous)) {
+            return;
+        }
+
+        areas.put(player.getUniqueId(), next);
+
+        // Cover new chunks first so chunks in both areas never drop to zero
+        cover(next, previous);
+        if (previous != null) {
+            uncover(previous, next);
+        }
+    }
+
+    /**
+     * Stop tracking a player.
+     *
+     * @param player The player
+     */
+    public void remove(Player player) {
+        Area previous = areas.remove(player.getUniqueId());
+        if (previous != null) {
+            uncover(previous, null);
+        }
+    }
+
+    /**
+     * Count a player in every chunk of an area, except those also in another area.
+     *
+     * @param area The area
+     * @param except The area already counted, or null
+     */
+    private void cover(Area area, Area except) {
+        CrateInstanceRegistry registry = crateService.crateInstanceRegistry();
+        LongObjectMap<int[]> chunks = coverage.computeIfAbsent(area.worldId(), uuid -> new LongObjectMap<>());
+
+        for (int x = area.chunkX() - area.radius(); x <= area.chunkX() + area.radius(); x++) {
+            for (int z = area.chunkZ() - area.radius(); z <= area.chunkZ() + area.radius(); z++) {
+                if (except != null && except.contains(area.worldId(), x, z)) {
+                    continue;
+                }
+
+                long key = PositionUtil.chunkKey(x, z);
+                int[] count = chunks.get(key);
+                if (count == null) {
+                    chunks.put(key, new int[] {1});
+                    registry.activateChunk(area.worldId(), x, z);
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a player from every chunk of an area, except those also in another area.
+     *
+     * @param area The area
+     * @param except The area still counted, or null
+     */
+    private void uncover(Area area, Area except) {
+        CrateInstanceRegistry registry = crateService.crateInstanceRegistry();
+        LongObjectMap<int[]> chunks = coverage.get(area.worldId());
+        if (chunks == null) {
+            return;
+        }
+
+        for (int x = area.chunkX() - area.radius(); x <= area.chunkX() + area.radius(); x++) {
+            for (int z = area.chunkZ() - area.radius(); z <= area.chunkZ() + area.radius(); z++) {
+                if (except != null && except.contains(area.worldId(), x, z)) {
+                    continue;
+                }
+
+                long key = PositionUtil.chunkKey(x, z);
+                int[] count = chunks.get(key);
+                if (count != null && --count[0] == 0) {
+                    chunks.remove(key);
+                    registry.deactivateChunk(area.worldId(), x, z);
+                }
+            }
+        }
+
+        if (chunks.isEmpty()) {
+            coverage.remove(area.worldId());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.random;
+
+import com.google.inject.Inject;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+import network.darkhelmet.stellarcrates.api.services.configuration.CrateConfiguration;
+import network.darkhelmet.stellarcrates.api.services.configuration.RandomMode;
+import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
+
+public class RandomService {
+    /**
+     * The configuration service.
+     */
+    private final ConfigurationService configurationService;
+
+    /**
+     * Per-thread secure generators, so threads don't contend on one instance.
+     */
+    private final ThreadLocal<SecureRandom> secureRandoms = ThreadLocal.withInitial(SecureRandom::new);
+
+    /**
+     * The seeded generator, shared so draws follow a single repeatable sequence.
+     */
+    private Random seededRandom;
+
+    /**
+     * The seed the seeded generator was created with.
+     */
+    private long seed;
+
+    /**
+     * Construct the random service.
+     *
+     * @param configurationService The configuration service
+     */
+    @Inject
+    public RandomService(ConfigurationService configurationService) {
+        this.configurationService = configurationService;
+    }
+
+    /**
+     * Get a random generator for the current thread.
+     *
+     * <p>Generators may be thread-confined, don't share them with other threads.</p>
+     *
+     * @return The random generator
+     */
+    public RandomGenerator random() {
+        RandomMode mode = configurationService.stellarCratesConfig().randomMode();
+        if (mode == RandomMode.SECURE) {
+            return secureRandoms.get();
+        } else if (mode == RandomMode.SEEDED) {
+            return seeded();
+        }
+
+        return ThreadLocalRandom.current();
+    }
+
+    /**
+     * Get a random generator for the current thread to draw rewards for a crate.
+     *
+     * @param crateConfiguration The crate configuration
+     * @return The random generator
+     */
+    public RandomGenerator random(CrateConfiguration crateConfiguration) {
+        if (crateConfiguration.secureRandom()
+                && configurationService.stellarCratesConfig().randomMode() != RandomMode.SEEDED) {
+            return secureRandoms.get();
+        }
+
+        return random();
+    }
+
+    /**
+     * Create a generator for a single worker to own, so draws never contend.
+     *
+     * <p>Follows the random mode. Seeded generators are derived from the seed and
+     * the stream, so each worker's sequence is repeatable.</p>
+     *
+     * @param stream The worker's stream number
+     * @return The random generator, not safe to share between threads
+     */
+    public RandomGenerator worker(int stream) {
+        RandomMode mode = configurationService.stellarCratesConfig().randomMode();
+        if (mode == RandomMode.SECURE) {
+            return new SecureRandom();
+        } else if (mode == RandomMode.SEEDED) {
+            return new SplittableRandom(configurationService.stellarCratesConfig().randomSeed() + stream);
+        }
+
+        return new SplittableRandom();
+    }
+
+    /**
+     * Get the seeded generator, recreating it if the configured seed has changed.
+     *
+     * @return The seeded generator
+     */
+    private synchronized RandomGenerator seeded() {
+        long configuredSeed = configurationService.stellarCratesConfig().randomSeed();
+        if (seededRandom == null || seed != configuredSeed) {
+            seed = configuredSeed;
+            seededRandom = new Random(configuredSeed);
+        }
+
+        return seededRandom;
+    }
+}
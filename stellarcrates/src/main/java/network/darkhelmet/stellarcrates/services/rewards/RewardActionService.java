@@ -0,0 +1,195 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.rewards;
+
+import com.google.inject.Inject;
+
+import java.util.List;
+
+import network.darkhelmet.stellarcrates.api.services.configuration.RewardActionConfiguration;
+import network.darkhelmet.stellarcrates.api.services.configuration.RewardActionType;
+import network.darkhelmet.stellarcrates.api.services.rewards.EconomyProvider;
+import network.darkhelmet.stellarcrates.api.services.rewards.PermissionProvider;
+import network.darkhelmet.stellarcrates.services.rewards.providers.VaultEconomyProvider;
+import network.darkhelmet.stellarcrates.services.rewards.providers.VaultPermissionProvider;
+import network.darkhelmet.stellarcrates.utils.InventoryUtil;
+
+import org.apache.logging.log4j.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+/**
+ * Runs typed reward actions directly through the API instead of dispatching commands.
+ *
+ * <p>Actions take a count so a batch of identical rewards runs as one call.</p>
+ */
+public class RewardActionService {
+    /**
+     * The logger.
+     */
+    private final Logger logger;
+
+    /**
+     * The economy provider, resolved on use. Null until one is registered.
+     */
+    private EconomyProvider economyProvider;
+
+    /**
+     * The permission provider, resolved on use. Null until one is registered.
+     */
+    private PermissionProvider permissionProvider;
+
+    /**
+     * Construct the reward action service.
+     *
+     * @param logger The logger
+     */
+    @Inject
+    public RewardActionService(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Build the item stacks an item action gives. Safe off the main thread.
+     *
+     * @param action The action
+     * @param count How many times the action runs
+     * @param into The list to add stacks to
+     */
+    public void items(RewardActionConfiguration action, int count, List<ItemStack> into) {
+        Material material = action.key() == null ? null : Material.matchMaterial(action.key());
+        if (material == null || !material.isItem()) {
+            logger.warn("Invalid material for reward item action: {}", action.key());
+            return;
+        }
+
+        InventoryUtil.mergeStacks(new ItemStack(material, Math.max(1, (int) action.amount())), count, into);
+    }
+
+    /**
+     * Run an action for a player. Item actions are given with the other reward items instead.
+     *
+     * <p>Main thread only.</p>
+     *
+     * @param player The player
+     * @param action The action
+     * @param count How many times the action runs
+     */
+    public void execute(Player player, RewardActionConfiguration action, int count) {
+        if (action.type() == null) {
+            return;
+        }
+
+        switch (action.type()) {
+            case ECONOMY -> {
+                EconomyProvider economy = economyProvider();
+                if (economy == null) {
+                    logger.warn("Can't give {} money, no economy provider found.", player.getName());
+                } else if (!economy.deposit(player, action.amount() * count)) {
+                    logger.warn("Economy deposit of {} to {} failed.", action.amount() * count, player.getName());
+                }
+            }
+            case EXPERIENCE -> {
+                int amount = (int) action.amount() * count;
+                if (action.levels()) {
+                    player.giveExpLevels(amount);
+                } else {
+                    player.giveExp(amount);
+                }
+            }
+            case PERMISSION -> {
+                PermissionProvider permissions = permissionProvider();
+                if (permissions == null) {
+                    logger.warn("Can't grant {} to {}, no permission provider found.", action.key(), player.getName());
+                } else if (!permissions.grant(player, action.key())) {
+                    logger.warn("Granting {} to {} failed.", action.key(), player.getName());
+                }
+            }
+            case POTION_EFFECT -> {
+                PotionEffectType type = action.key() == null ? null : PotionEffectType.getByName(action.key());
+                if (type == null) {
+                    logger.warn("Invalid potion effect for reward action: {}", action.key());
+                    return;
+                }
+
+                // Repeats extend the effect rather than stacking it
+                int duration = (int) Math.min(Integer.MAX_VALUE, (long) action.duration() * count);
+                player.addPotionEffect(new PotionEffect(type, duration, action.amplifier()));
+            }
+            default -> {
+                // Items are merged with the other reward items
+            }
+        }
+    }
+
+    /**
+     * Check whether an action gives items.
+     *
+     * @param action The action
+     * @return True for item actions
+     */
+    public static boolean isItem(RewardActionConfiguration action) {
+        return action.type() == RewardActionType.ITEM;
+    }
+
+    /**
+     * Get the economy provider, looking it up until one is registered.
+     *
+     * @return The economy provider, or null
+     */
+    private EconomyProvider economyProvider() {
+        if (economyProvider == null && vaultInstalled()) {
+            economyProvider = VaultEconomyProvider.resolve();
+        }
+
+        return economyProvider;
+    }
+
+    /**
+     * Get the permission provider, looking it up until one is registered.
+     *
+     * @return The permission provider, or null
+     */
+    private PermissionProvider permissionProvider() {
+        if (permissionProvider == null && vaultInstalled()) {
+            permissionProvider = VaultPermissionProvider.resolve();
+        }
+
+        return permissionProvider;
+    }
+
+    /**
+     * Check whether Vault is installed.
+     *
+     * <p>Vault is a soft dependency, its classes can't be touched unless it's installed.
+     * Economy and permission plugins register with Vault when they enable, which may be
+     * after us, so providers are looked up again for as long as none is found.</p>
+     *
+     * @return True if Vault is installed
+     */
+    private boolean vaultInstalled() {
+        return Bukkit.getPluginManager().getPlugin("Vault") != null;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.rewards.providers;
+
+import net.milkbowl.vault.economy.Economy;
+
+import network.darkhelmet.stellarcrates.api.services.rewards.EconomyProvider;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.plugin.RegisteredServiceProvider;
+
+public class VaultEconomyProvider implements EconomyProvider {
+    /**
+     * The vault economy.
+     */
+    private final Economy economy;
+
+    /**
+     * Construct the vault economy provider.
+     *
+     * @param economy The vault economy
+     */
+    public VaultEconomyProvider(Economy economy) {
+        this.economy = economy;
+    }
+
+    /**
+     * Create a provider from the economy service registered with Vault.
+     *
+     * @return The provider, or null if nothing is registered
+     */
+    public static EconomyProvider resolve() {
+        RegisteredServiceProvider<Economy> registration = Bukkit.getServicesManager().getRegistration(Economy.class);
+        if (registration == null) {
+            return null;
+        }
+
+        return new VaultEconomyProvider(registration.getProvider());
+    }
+
+    @Override
+    public boolean deposit(OfflinePlayer player, double amount) {
+        return economy.depositPlayer(player, amount).transactionSuccess();
+    }
+}
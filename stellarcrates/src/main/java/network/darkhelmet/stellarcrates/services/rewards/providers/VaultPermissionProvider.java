@@ -0,0 +1,65 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.rewards.providers;
+
+import net.milkbowl.vault.permission.Permission;
+
+import network.darkhelmet.stellarcrates.api.services.rewards.PermissionProvider;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.plugin.RegisteredServiceProvider;
+
+public class VaultPermissionProvider implements PermissionProvider {
+    /**
+     * The vault permission service.
+     */
+    private final Permission permission;
+
+    /**
+     * Construct the vault permission provider.
+     *
+     * @param permission The vault permission service
+     */
+    public VaultPermissionProvider(Permission permission) {
+        this.permission = permission;
+    }
+
+    /**
+     * Create a provider from the permission service registered with Vault.
+     *
+     * @return The provider, or null if nothing is registered
+     */
+    public static PermissionProvider resolve() {
+        RegisteredServiceProvider<Permission> registration =
+            Bukkit.getServicesManager().getRegistration(Permission.class);
+        if (registration == null) {
+            return null;
+        }
+
+        return new VaultPermissionProvider(registration.getProvider());
+    }
+
+    @Override
+    public boolean grant(OfflinePlayer player, String node) {
+        return permission.playerAdd(null, player, node);
+    }
+}
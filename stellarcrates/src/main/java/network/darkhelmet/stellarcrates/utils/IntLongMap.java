@@ -0,0 +1,214 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.utils;
+
+import java.util.Arrays;
+
+/**
+ * A minimal open-addressing hash map from primitive ints to primitive longs.
+ *
+ * <p>Nothing is boxed on lookups or updates. Not thread-safe.</p>
+ */
+public class IntLongMap {
+    /**
+     * The default capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The keys.
+     */
+    private int[] keys;
+
+    /**
+     * The values.
+     */
+    private long[] values;
+
+    /**
+     * Which slots hold an entry.
+     */
+    private boolean[] used;
+
+    /**
+     * The number of entries.
+     */
+    private int size;
+
+    /**
+     * Construct an empty map.
+     */
+    public IntLongMap() {
+        this.keys = new int[DEFAULT_CAPACITY];
+        this.values = new long[DEFAULT_CAPACITY];
+        this.used = new boolean[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Get the value for a key.
+     *
+     * @param key The key
+     * @param defaultValue The value to return if the key is missing
+     * @return The value, or the default
+     */
+    public long get(int key, long defaultValue) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+
+        return defaultValue;
+    }
+
+    /**
+     * Put a value.
+     *
+     * @param key The key
+     * @param value The value
+     */
+    public void put(int key, long value) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        for (; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        used[i] = true;
+
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * Remove a key.
+     *
+     * @param key The key
+     */
+    public void remove(int key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                shiftKeys(i);
+                size--;
+
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return The size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * Close the gap left by a removal so probe chains stay intact.
+     *
+     * @param pos The removed slot
+     */
+    private void shiftKeys(int pos) {
+        int mask = keys.length - 1;
+        int last;
+        int slot;
+
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+
+            while (true) {
+                if (!used[pos]) {
+                    used[last] = false;
+                    return;
+                }
+
+                slot = mix(keys[pos]) & mask;
+                if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos)) {
+                    break;
+                }
+
+                pos = (pos + 1) & mask;
+            }
+
+            keys[last] = keys[pos];
+            values[last] = values[pos];
+        }
+    }
+
+    /**
+     * Grow the backing arrays.
+     *
+     * @param capacity The new capacity
+     */
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        keys = new int[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldUsed[j]) {
+                int i = mix(oldKeys[j]) & mask;
+                while (used[i]) {
+                    i = (i + 1) & mask;
+                }
+
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                used[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Spread key bits, entity ids are sequential.
+     *
+     * @param key The key
+     * @return The hash
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
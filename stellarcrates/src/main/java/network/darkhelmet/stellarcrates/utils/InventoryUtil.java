@@ -20,7 +20,10 @@
 
 package network.darkhelmet.stellarcrates.utils;
 
+import java.util.List;
+
 import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
 
 public class InventoryUtil {
     /**
@@ -37,4 +40,23 @@ public class InventoryUtil {
     public static boolean isInventoryFull(Inventory inventory) {
         return inventory.firstEmpty() == -1;
     }
+
+    /**
+     * Split copies of an item stack into as few full stacks as possible.
+     *
+     * @param itemStack The item stack
+     * @param copies The number of copies
+     * @param into The list to add stacks to
+     */
+    public static void mergeStacks(ItemStack itemStack, int copies, List<ItemStack> into) {
+        long total = (long) itemStack.getAmount() * copies;
+        int maxStackSize = Math.max(1, itemStack.getMaxStackSize());
+
+        while (total > 0) {
+            ItemStack stack = itemStack.clone();
+            stack.setAmount((int) Math.min(total, maxStackSize));
+            into.add(stack);
+            total -= stack.getAmount();
+        }
+    }
 }
@@ -0,0 +1,277 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.utils;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A minimal open-addressing hash map keyed by primitive longs.
+ *
+ * <p>Avoids boxing keys on lookups that happen in hot paths (block interactions, etc).
+ * Not thread-safe.</p>
+ *
+ * @param <V> The value type
+ */
+public class LongObjectMap<V> {
+    /**
+     * The default capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The keys.
+     */
+    private long[] keys;
+
+    /**
+     * The values. A null value marks an empty slot.
+     */
+    private Object[] values;
+
+    /**
+     * The number of entries.
+     */
+    private int size;
+
+    /**
+     * Construct an empty map.
+     */
+    public LongObjectMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an empty map sized for the expected number of entries.
+     *
+     * @param expected The expected number of entries
+     */
+    public LongObjectMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, expected * 2) - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+    }
+
+    /**
+     * Construct a copy of another map.
+     *
+     * @param other The map to copy
+     */
+    public LongObjectMap(LongObjectMap<V> other) {
+        this.keys = Arrays.copyOf(other.keys, other.keys.length);
+        this.values = Arrays.copyOf(other.values, other.values.length);
+        this.size = other.size;
+    }
+
+    /**
+     * Get the value for a key.
+     *
+     * @param key The key
+     * @return The value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Check whether a key is present.
+     *
+     * @param key The key
+     * @return True if present
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Put a value.
+     *
+     * @param key The key
+     * @param value The value, must not be null
+     * @return The previous value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported.");
+        }
+
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+
+                return previous;
+            }
+        }
+
+        keys[i] = key;
+        values[i] = value;
+
+        if (++size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        return null;
+    }
+
+    /**
+     * Remove a key.
+     *
+     * @param key The key
+     * @return The removed value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                shiftKeys(i);
+                size--;
+
+                return previous;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return The size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Whether the map is empty.
+     *
+     * @return True if empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Visit every value.
+     *
+     * @param consumer The consumer
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> consumer) {
+        for (Object value : values) {
+            if (value != null) {
+                consumer.accept((V) value);
+            }
+        }
+    }
+
+    /**
+     * Close the gap left by a removal so probe chains stay intact.
+     *
+     * @param pos The removed slot
+     */
+    private void shiftKeys(int pos) {
+        int mask = keys.length - 1;
+        int last;
+        int slot;
+
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+
+            while (true) {
+                if (values[pos] == null) {
+                    values[last] = null;
+                    return;
+                }
+
+                slot = mix(keys[pos]) & mask;
+                if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos)) {
+                    break;
+                }
+
+                pos = (pos + 1) & mask;
+            }
+
+            keys[last] = keys[pos];
+            values[last] = values[pos];
+        }
+    }
+
+    /**
+     * Grow the backing arrays.
+     *
+     * @param capacity The new capacity
+     */
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != null) {
+                int i = mix(oldKeys[j]) & mask;
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Spread key bits so packed coordinates distribute well.
+     *
+     * @param key The key
+     * @return The hash
+     */
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
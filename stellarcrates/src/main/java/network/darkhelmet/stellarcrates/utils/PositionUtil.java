@@ -0,0 +1,54 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.utils;
+
+public class PositionUtil {
+    /**
+     * Prevent instantiation.
+     */
+    private PositionUtil() {}
+
+    /**
+     * Pack block coordinates into a single long.
+     *
+     * <p>Uses 26 bits for x/z and 12 bits for y, which covers the full world border
+     * and every supported build height.</p>
+     *
+     * @param x The block x
+     * @param y The block y
+     * @param z The block z
+     * @return The packed key
+     */
+    public static long blockKey(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * Pack chunk coordinates into a single long.
+     *
+     * @param chunkX The chunk x
+     * @param chunkZ The chunk z
+     * @return The packed key
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+}
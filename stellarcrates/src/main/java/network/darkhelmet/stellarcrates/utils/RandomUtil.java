@@ -20,13 +20,24 @@
 
 package network.darkhelmet.stellarcrates.utils;
 
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 public class RandomUtil {
     /**
-     * RNG.
+     * Below this mean binomial draws use inversion, above it transformed rejection.
      */
-    public static final Random random = new Random();
+    private static final double BINOMIAL_INVERSION_MEAN = 10;
+
+    /**
+     * Exact log factorials for small values, Stirling's series is used above.
+     */
+    private static final double[] LOG_FACTORIALS = new double[128];
+
+    static {
+        for (int i = 1; i < LOG_FACTORIALS.length; i++) {
+            LOG_FACTORIALS[i] = LOG_FACTORIALS[i - 1] + Math.log(i);
+        }
+    }
 
     /**
      * Prevent instantiation.
@@ -36,13 +47,121 @@ public class RandomUtil {
     /**
      * Get a random double within a given range.
      *
+     * @param random The random generator
      * @param min The mininum barrier
      * @param max The maximum barrier
      * @return The random double
      */
-    public static double randomInRange(double min, double max) {
+    public static double randomInRange(RandomGenerator random, double min, double max) {
         double range = max - min;
         double scaled = random.nextDouble() * range;
         return scaled + min;
     }
+
+    /**
+     * Draw the number of successes in n trials with success probability p.
+     *
+     * <p>Runs in constant expected time regardless of n, using inversion for small
+     * means and Hormann's BTRS transformed rejection otherwise.</p>
+     *
+     * @param random The random generator
+     * @param n The number of trials
+     * @param p The success probability
+     * @return The number of successes
+     */
+    public static int binomial(RandomGenerator random, int n, double p) {
+        if (n <= 0 || p <= 0) {
+            return 0;
+        } else if (p >= 1) {
+            return n;
+        } else if (p > 0.5) {
+            return n - binomial(random, n, 1 - p);
+        }
+
+        if (n * p < BINOMIAL_INVERSION_MEAN) {
+            return binomialInversion(random, n, p);
+        }
+
+        return binomialRejection(random, n, p);
+    }
+
+    /**
+     * Binomial draw by inversion, for small means.
+     *
+     * @param random The random generator
+     * @param n The number of trials
+     * @param p The success probability, at most 0.5
+     * @return The number of successes
+     */
+    private static int binomialInversion(RandomGenerator random, int n, double p) {
+        double q = 1 - p;
+        double s = p / q;
+        double a = (n + 1) * s;
+        double r = Math.pow(q, n);
+        double u = random.nextDouble();
+
+        int x = 0;
+        while (u > r && x < n) {
+            u -= r;
+            x++;
+            r *= (a / x) - s;
+        }
+
+        return x;
+    }
+
+    /**
+     * Binomial draw by transformed rejection with squeeze (BTRS), for larger means.
+     *
+     * @param random The random generator
+     * @param n The number of trials
+     * @param p The success probability, at most 0.5
+     * @return The number of successes
+     */
+    private static int binomialRejection(RandomGenerator random, int n, double p) {
+        double spq = Math.sqrt(n * p * (1 - p));
+        double b = 1.15 + 2.53 * spq;
+        double a = -0.0873 + 0.0248 * b + 0.01 * p;
+        double c = n * p + 0.5;
+        double vr = 0.92 - 4.2 / b;
+        double alpha = (2.83 + 5.1 / b) * spq;
+        double lpq = Math.log(p / (1 - p));
+        int m = (int) Math.floor((n + 1) * p);
+        double h = logFactorial(m) + logFactorial(n - m);
+
+        while (true) {
+            double u = random.nextDouble() - 0.5;
+            double v = random.nextDouble();
+            double us = 0.5 - Math.abs(u);
+            int k = (int) Math.floor((2 * a / us + b) * u + c);
+            if (k < 0 || k > n) {
+                continue;
+            }
+
+            if (us >= 0.07 && v <= vr) {
+                return k;
+            }
+
+            v = Math.log(v * alpha / (a / (us * us) + b));
+            if (v <= h - logFactorial(k) - logFactorial(n - k) + (k - m) * lpq) {
+                return k;
+            }
+        }
+    }
+
+    /**
+     * Get ln(k!).
+     *
+     * @param k The value
+     * @return The log factorial
+     */
+    private static double logFactorial(int k) {
+        if (k < LOG_FACTORIALS.length) {
+            return LOG_FACTORIALS[k];
+        }
+
+        double x = k + 1;
+        return (x - 0.5) * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI)
+            + 1 / (12 * x) - 1 / (360 * x * x * x);
+    }
 }
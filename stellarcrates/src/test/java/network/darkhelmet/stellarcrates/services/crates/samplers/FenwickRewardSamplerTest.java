@@ -0,0 +1,112 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.crates.samplers;
+
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FenwickRewardSamplerTest {
+    /**
+     * Draws follow the reward weights.
+     */
+    @Test
+    void drawsFollowWeights() {
+        double[] weights = {1, 2, 3, 4, 10, 0.5, 7};
+        RewardSampler sampler = new FenwickRewardSampler(SamplerTests.rewards(weights.length), weights);
+
+        long[] counts = SamplerTests.draw(sampler, SamplerTests.seededRandom(1), SamplerTests.DRAWS);
+
+        SamplerTests.assertDistribution(weights, counts);
+    }
+
+    /**
+     * Rewards with no weight are never drawn, including the first and last.
+     */
+    @Test
+    void zeroWeightIsNeverDrawn() {
+        double[] weights = {0, 5, 0, 5, -1, 0};
+        RewardSampler sampler = new FenwickRewardSampler(SamplerTests.rewards(weights.length), weights);
+
+        long[] counts = SamplerTests.draw(sampler, SamplerTests.seededRandom(2), SamplerTests.DRAWS);
+
+        SamplerTests.assertDistribution(weights, counts);
+        assertEquals(0, sampler.weight(4));
+    }
+
+    /**
+     * A single reward is always drawn.
+     */
+    @Test
+    void singleRewardIsAlwaysDrawn() {
+        List<IReward> rewards = SamplerTests.rewards(1);
+        RewardSampler sampler = new FenwickRewardSampler(rewards, new double[] {3});
+        RandomGenerator random = SamplerTests.seededRandom(3);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(rewards.get(0), sampler.sample(random));
+        }
+    }
+
+    /**
+     * Without any positive weight, every reward is equally likely.
+     */
+    @Test
+    void allZeroWeightsDrawUniformly() {
+        RewardSampler sampler = new FenwickRewardSampler(SamplerTests.rewards(3), new double[] {0, 0, 0});
+
+        long[] counts = SamplerTests.draw(sampler, SamplerTests.seededRandom(4), SamplerTests.DRAWS);
+
+        SamplerTests.assertDistribution(new double[] {1, 1, 1}, counts);
+    }
+
+    /**
+     * Weights updated at runtime apply to the next draw, in place.
+     */
+    @Test
+    void weightUpdateAppliesInPlace() {
+        double[] weights = {1, 1, 1, 1, 1};
+        RewardSampler sampler = new FenwickRewardSampler(SamplerTests.rewards(weights.length), weights);
+        RandomGenerator random = SamplerTests.seededRandom(5);
+
+        SamplerTests.assertDistribution(weights, SamplerTests.draw(sampler, random, SamplerTests.DRAWS));
+
+        assertSame(sampler, sampler.updateWeight(0, 0));
+        assertSame(sampler, sampler.updateWeight(3, 8));
+        assertEquals(8, sampler.weight(3));
+
+        double[] updated = {0, 1, 1, 8, 1};
+        SamplerTests.assertDistribution(updated, SamplerTests.draw(sampler, random, SamplerTests.DRAWS));
+
+        // Back to nothing drawable, then every reward is equally likely again
+        for (int i = 0; i < weights.length; i++) {
+            sampler.updateWeight(i, 0);
+        }
+
+        SamplerTests.assertDistribution(weights, SamplerTests.draw(sampler, random, SamplerTests.DRAWS));
+    }
+}
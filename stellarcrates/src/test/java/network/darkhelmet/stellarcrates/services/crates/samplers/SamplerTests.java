@@ -0,0 +1,158 @@
+/*
+ * StellarCrates
+ *
+ * Copyright (c) 2022 M Botsko (viveleroi)
+ *                    Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package network.darkhelmet.stellarcrates.services.crates.samplers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+import network.darkhelmet.stellarcrates.api.services.configuration.RandomMode;
+import network.darkhelmet.stellarcrates.api.services.configuration.StellarCratesConfiguration;
+import network.darkhelmet.stellarcrates.api.services.crates.IReward;
+import network.darkhelmet.stellarcrates.services.configuration.ConfigurationService;
+import network.darkhelmet.stellarcrates.services.random.RandomService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Shared helpers for the reward sampler tests.
+ */
+final class SamplerTests {
+    /**
+     * Draws per distribution check.
+     */
+    static final int DRAWS = 200_000;
+
+    /**
+     * The standard normal quantile for a 0.001 significance level.
+     */
+    private static final double Z_999 = 3.090;
+
+    /**
+     * Not constructed.
+     */
+    private SamplerTests() {}
+
+    /**
+     * Build a random service in seeded mode, so every run draws the same sequence.
+     *
+     * @param seed The seed
+     * @return The random generator
+     */
+    static RandomGenerator seededRandom(long seed) {
+        StellarCratesConfiguration config = mock(StellarCratesConfiguration.class);
+        when(config.randomMode()).thenReturn(RandomMode.SEEDED);
+        when(config.randomSeed()).thenReturn(seed);
+
+        ConfigurationService configurationService = mock(ConfigurationService.class);
+        when(configurationService.stellarCratesConfig()).thenReturn(config);
+
+        return new RandomService(configurationService).random();
+    }
+
+    /**
+     * Create placeholder rewards.
+     *
+     * @param count The number of rewards
+     * @return The rewards
+     */
+    static List<IReward> rewards(int count) {
+        List<IReward> rewards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rewards.add(mock(IReward.class));
+        }
+
+        return rewards;
+    }
+
+    /**
+     * Draw from a sampler and count how often each index comes up.
+     *
+     * @param sampler The sampler
+     * @param random The random generator
+     * @param draws The number of draws
+     * @return The count of each index
+     */
+    static long[] draw(RewardSampler sampler, RandomGenerator random, int draws) {
+        long[] counts = new long[sampler.rewards().size()];
+        for (int i = 0; i < draws; i++) {
+            counts[sampler.sampleIndex(random)]++;
+        }
+
+        return counts;
+    }
+
+    /**
+     * Assert draw counts follow the given weights.
+     *
+     * <p>Zero weights must never be drawn. The rest are checked with a chi-square
+     * goodness of fit test at the 0.001 level.</p>
+     *
+     * @param weights The expected weights
+     * @param counts The draw counts
+     */
+    static void assertDistribution(double[] weights, long[] counts) {
+        double totalWeight = 0;
+        long totalCount = 0;
+        for (int i = 0; i < weights.length; i++) {
+            totalWeight += Math.max(0, weights[i]);
+            totalCount += counts[i];
+        }
+
+        double chiSquare = 0;
+        int categories = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] <= 0) {
+                assertEquals(0, counts[i], "Reward " + i + " has no weight but was drawn");
+                continue;
+            }
+
+            double expected = totalCount * weights[i] / totalWeight;
+            chiSquare += (counts[i] - expected) * (counts[i] - expected) / expected;
+            categories++;
+        }
+
+        if (categories < 2) {
+            return;
+        }
+
+        double critical = criticalValue(categories - 1);
+        assertTrue(chiSquare < critical,
+            String.format("Chi-square %.2f exceeds %.2f for %d degrees of freedom", chiSquare, critical,
+                categories - 1));
+    }
+
+    /**
+     * Approximate the chi-square critical value at the 0.001 level (Wilson-Hilferty).
+     *
+     * @param degreesOfFreedom The degrees of freedom
+     * @return The critical value
+     */
+    private static double criticalValue(int degreesOfFreedom) {
+        double k = degreesOfFreedom;
+        double term = 1 - 2 / (9 * k) + Z_999 * Math.sqrt(2 / (9 * k));
+
+        return k * term * term * term;
+    }
+}